@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.kolich.common.util.crypt;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.binary.Base32;
+import org.apache.commons.codec.binary.Base64;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link Base64Utils} and {@link Base32Utils} against what
+ * they used to do: commons-codec's static Base64 methods, and a new
+ * commons-codec Base32 instance per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+	
+	@Param({"16", "256", "4096"})
+	private int length_;
+	
+	private byte[] bytes_;
+	
+	private byte[] base64_;
+	private byte[] base64URLSafe_;
+	private byte[] base32_;
+	
+	@Setup
+	public void setup() {
+		bytes_ = new byte[length_];
+		new Random(42L).nextBytes(bytes_);
+		base64_ = Base64.encodeBase64(bytes_);
+		base64URLSafe_ = Base64.encodeBase64URLSafe(bytes_);
+		base32_ = new Base32(true).encode(bytes_);
+	}
+	
+	@Benchmark
+	public byte[] commonsBase64Encode() {
+		return Base64.encodeBase64(bytes_);
+	}
+	
+	@Benchmark
+	public byte[] base64Encode() {
+		return Base64Utils.encodeBase64(bytes_);
+	}
+	
+	@Benchmark
+	public byte[] commonsBase64EncodeURLSafe() {
+		return Base64.encodeBase64URLSafe(bytes_);
+	}
+	
+	@Benchmark
+	public byte[] base64EncodeURLSafe() {
+		return Base64Utils.encodeBase64URLSafe(bytes_);
+	}
+	
+	@Benchmark
+	public byte[] commonsBase64Decode() {
+		return Base64.decodeBase64(base64_);
+	}
+	
+	@Benchmark
+	public byte[] base64Decode() {
+		return Base64Utils.decodeBase64(base64_);
+	}
+	
+	@Benchmark
+	public byte[] commonsBase64DecodeURLSafe() {
+		return Base64.decodeBase64(base64URLSafe_);
+	}
+	
+	@Benchmark
+	public byte[] base64DecodeURLSafe() {
+		return Base64Utils.decodeBase64(base64URLSafe_);
+	}
+	
+	@Benchmark
+	public byte[] commonsBase32Encode() {
+		return new Base32(true).encode(bytes_);
+	}
+	
+	@Benchmark
+	public byte[] base32Encode() {
+		return Base32Utils.encodeBase32(bytes_);
+	}
+	
+	@Benchmark
+	public byte[] commonsBase32Decode() {
+		return new Base32(true).decode(base32_);
+	}
+	
+	@Benchmark
+	public byte[] base32Decode() {
+		return Base32Utils.decodeBase32(base32_);
+	}
+	
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.kolich.common.util.crypt;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.binary.Base64;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link StrictBase64Decoder} against commons-codec's
+ * byte-at-a-time decoder, the lenient {@link Base64Utils} decoder and
+ * the JDK's own strict decoder, on standard and URL-safe input.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrictBase64DecoderBenchmark {
+	
+	private static final java.util.Base64.Decoder JDK_DECODER =
+		java.util.Base64.getDecoder();
+	private static final java.util.Base64.Decoder JDK_URL_DECODER =
+		java.util.Base64.getUrlDecoder();
+	
+	@Param({"16", "256", "4096", "65536"})
+	private int length_;
+	
+	private byte[] base64_;
+	private byte[] base64URLSafe_;
+	
+	@Setup
+	public void setup() {
+		final byte[] bytes = new byte[length_];
+		new Random(42L).nextBytes(bytes);
+		base64_ = Base64.encodeBase64(bytes);
+		base64URLSafe_ = Base64.encodeBase64URLSafe(bytes);
+	}
+	
+	@Benchmark
+	public byte[] strict() {
+		return StrictBase64Decoder.decode(base64_);
+	}
+	
+	@Benchmark
+	public byte[] strictURLSafe() {
+		return StrictBase64Decoder.decode(base64URLSafe_);
+	}
+	
+	@Benchmark
+	public byte[] commons() {
+		return Base64.decodeBase64(base64_);
+	}
+	
+	@Benchmark
+	public byte[] commonsURLSafe() {
+		return Base64.decodeBase64(base64URLSafe_);
+	}
+	
+	@Benchmark
+	public byte[] lenient() {
+		return Base64Utils.decodeBase64(base64_);
+	}
+	
+	@Benchmark
+	public byte[] jdk() {
+		return JDK_DECODER.decode(base64_);
+	}
+	
+	@Benchmark
+	public byte[] jdkURLSafe() {
+		return JDK_URL_DECODER.decode(base64URLSafe_);
+	}
+	
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.kolich.common.util.io;
+
+import static com.kolich.common.DefaultCharacterEncoding.UTF_8_CHARSET;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares reading a file with {@link JumpToLine#visit(LineVisitor)}
+ * against the plain {@link JumpToLine#readLine()} loop, matching a
+ * prefix on every line the way a log parser would.  Run with
+ * -prof gc to see the difference in allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JumpToLineBenchmark {
+	
+	private static final String PREFIX = "ERROR";
+	
+	@Param({"100000"})
+	private int lines_;
+	
+	@Param({"120"})
+	private int lineLength_;
+	
+	private File file_;
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		file_ = File.createTempFile("jumptoline", ".log");
+		final Random random = new Random(42L);
+		final String[] levels = {"DEBUG", "INFO ", "WARN ", "ERROR"};
+		try(final Writer writer = Files.newBufferedWriter(file_.toPath(),
+			UTF_8_CHARSET)) {
+			final StringBuilder sb = new StringBuilder(lineLength_);
+			for(int i = 0; i < lines_; i++) {
+				sb.setLength(0);
+				sb.append(levels[random.nextInt(levels.length)]);
+				while(sb.length() < lineLength_) {
+					sb.append((char)('a' + random.nextInt(26)));
+				}
+				writer.write(sb.toString());
+				writer.write('\n');
+			}
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file_.delete();
+	}
+	
+	@Benchmark
+	public long readLine() throws IOException {
+		final JumpToLine jtl = new JumpToLine(file_);
+		try {
+			long matches = 0L;
+			while(jtl.hasNext()) {
+				if(jtl.readLine().startsWith(PREFIX)) {
+					matches++;
+				}
+			}
+			return matches;
+		} finally {
+			jtl.close();
+		}
+	}
+	
+	@Benchmark
+	public long visit() throws IOException {
+		final JumpToLine jtl = new JumpToLine(file_);
+		try {
+			final long[] matches = new long[1];
+			jtl.visit(new LineVisitor() {
+				@Override
+				public boolean visit(final long lineNumber,
+					final CharSequence line) {
+					if(startsWith(line, PREFIX)) {
+						matches[0]++;
+					}
+					return true;
+				}
+			});
+			return matches[0];
+		} finally {
+			jtl.close();
+		}
+	}
+	
+	private static final boolean startsWith(final CharSequence line,
+		final String prefix) {
+		if(line.length() < prefix.length()) {
+			return false;
+		}
+		for(int i = 0, l = prefix.length(); i < l; i++) {
+			if(line.charAt(i) != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+}
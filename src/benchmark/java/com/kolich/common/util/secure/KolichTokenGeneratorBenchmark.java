@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.kolich.common.util.secure;
+
+import static com.kolich.common.util.crypt.Base64Utils.encodeBase64URLSafe;
+import static org.apache.commons.codec.binary.StringUtils.newStringUtf8;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares building a batch of session tokens the old way, one
+ * {@link KolichSecureRandom#getRandom()} and URL-safe base-64 encode
+ * per token, against {@link KolichTokenGenerator}, both one token at
+ * a time and in bulk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KolichTokenGeneratorBenchmark {
+	
+	/**
+	 * Number of tokens built per benchmark call.
+	 */
+	@Param({"1", "100"})
+	private int count_;
+	
+	/**
+	 * Number of random bytes behind each token.
+	 */
+	@Param({"32"})
+	private int tokenBytes_;
+	
+	private KolichSecureRandom random_;
+	private KolichTokenGenerator generator_;
+	
+	@Setup
+	public void setup() {
+		random_ = new KolichSecureRandom(tokenBytes_ * Byte.SIZE);
+		random_.warmUp();
+		generator_ = new KolichTokenGenerator(random_, tokenBytes_);
+	}
+	
+	@Benchmark
+	public String[] getRandomAndEncode() {
+		final String[] tokens = new String[count_];
+		for(int i = 0; i < count_; i++) {
+			tokens[i] = newStringUtf8(encodeBase64URLSafe(
+				random_.getRandom()));
+		}
+		return tokens;
+	}
+	
+	@Benchmark
+	public String[] nextToken() {
+		final String[] tokens = new String[count_];
+		for(int i = 0; i < count_; i++) {
+			tokens[i] = generator_.nextToken();
+		}
+		return tokens;
+	}
+	
+	@Benchmark
+	public String[] nextTokens() {
+		return generator_.nextTokens(count_);
+	}
+	
+}
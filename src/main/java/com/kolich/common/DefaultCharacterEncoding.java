@@ -26,8 +26,16 @@
 
 package com.kolich.common;
 
+import java.nio.charset.Charset;
+
 public interface DefaultCharacterEncoding {
 	
 	public static final String UTF_8 = "UTF-8";
+	
+	/**
+	 * The {@link #UTF_8} charset, already looked up; prefer this over
+	 * the name wherever a Charset is accepted.
+	 */
+	public static final Charset UTF_8_CHARSET = Charset.forName(UTF_8);
 		
 }
@@ -26,14 +26,38 @@
 
 package com.kolich.common.date;
 
+import static java.time.temporal.ChronoField.DAY_OF_MONTH;
+import static java.time.temporal.ChronoField.HOUR_OF_DAY;
+import static java.time.temporal.ChronoField.MILLI_OF_SECOND;
+import static java.time.temporal.ChronoField.MINUTE_OF_HOUR;
+import static java.time.temporal.ChronoField.MONTH_OF_YEAR;
+import static java.time.temporal.ChronoField.SECOND_OF_MINUTE;
+import static java.time.temporal.ChronoField.YEAR;
+
 import java.text.DateFormat;
 import java.text.ParseException;
+import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.chrono.IsoChronology;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.TemporalAccessor;
 import java.util.Date;
+import java.util.Locale;
 import java.util.SimpleTimeZone;
 
 /**
  * Supports two common formats of ISO-8601 dates.
+ * 
+ * Thread-safe without any locking: well-formed dates are formatted and
+ * parsed with immutable {@link DateTimeFormatter}s in UTC.  Anything
+ * else, like a year before the Gregorian cutover or a lenient
+ * out-of-range field, falls back to a per-thread
+ * {@link SimpleDateFormat}, so results are exactly what they've always
+ * been.
  * @author Mark Kolich
  *
  */
@@ -44,36 +68,89 @@ public final class ISO8601DateFormat {
 	private static final String ALTERNATIVE_DATE_FORMAT_STRING =
 		"yyyy-MM-dd'T'HH:mm:ss'Z'";
 	
-	private static final DateFormat primaryFormat__ =
-        new SimpleDateFormat(DATE_FORMAT_STRING);
-	private static final DateFormat altFormat__ =
-        new SimpleDateFormat(ALTERNATIVE_DATE_FORMAT_STRING);
+	private static final DateTimeFormatter PRIMARY_FORMATTER =
+		formatter(true);
+	private static final DateTimeFormatter ALTERNATIVE_FORMATTER =
+		formatter(false);
 	
-	static {
-		primaryFormat__.setTimeZone(new SimpleTimeZone(0, "GMT"));
-		altFormat__.setTimeZone(new SimpleTimeZone(0, "GMT"));
-	}
+	/**
+	 * The range of instants, from 1583-01-01 up to 10000-01-01, that
+	 * are four digit years on the proleptic Gregorian calendar of
+	 * java.time and the Julian/Gregorian calendar of SimpleDateFormat
+	 * alike.
+	 */
+	private static final long MIN_FAST_MILLIS = -12212553600000L;
+	private static final long MAX_FAST_MILLIS = 253402300800000L;
+	
+	/**
+	 * Returned by {@link #parseFast} when the input isn't well-formed.
+	 */
+	private static final long NOT_PARSED = Long.MIN_VALUE;
+	
+	private static final ThreadLocal<DateFormat> primaryFormat__ =
+		new ThreadLocal<DateFormat>() {
+			@Override
+			protected DateFormat initialValue() {
+				return newGMTInstance(DATE_FORMAT_STRING);
+			}
+		};
+	private static final ThreadLocal<DateFormat> altFormat__ =
+		new ThreadLocal<DateFormat>() {
+			@Override
+			protected DateFormat initialValue() {
+				return newGMTInstance(ALTERNATIVE_DATE_FORMAT_STRING);
+			}
+		};
 	
 	// Cannot be instantiated.
 	private ISO8601DateFormat() {}
 	
-	public static synchronized final String format(final Date d) {
-		return primaryFormat__.format(d);
+	public static final String format(final Date d) {
+		return format(d.getTime());
+	}
+	
+	public static final String format(final Instant i) {
+		return format(i.toEpochMilli());
+	}
+	
+	public static final String format(final long epochMillis) {
+		if(epochMillis >= MIN_FAST_MILLIS && epochMillis < MAX_FAST_MILLIS) {
+			return PRIMARY_FORMATTER.format(Instant.ofEpochMilli(epochMillis));
+		}
+		return primaryFormat__.get().format(new Date(epochMillis));
+	}
+	
+	public static final Date parse(final String s) {
+		return new Date(parseMillis(s));
 	}
 	
-	public static synchronized final Date parse(final String s) {
-		Date result = null;
+	public static final Instant parseInstant(final String s) {
+		return Instant.ofEpochMilli(parseMillis(s));
+	}
+	
+	/**
+	 * Parses the given ISO-8601 date, in either format, into
+	 * milliseconds since the epoch.  Like {@link DateFormat#parse(String)},
+	 * any text after the date is ignored.
+	 */
+	public static final long parseMillis(final String s) {
+		long result = parseFast(s, PRIMARY_FORMATTER);
+		if(result == NOT_PARSED) {
+			result = parseFast(s, ALTERNATIVE_FORMATTER);
+		}
+		if(result != NOT_PARSED) {
+			return result;
+		}
 		try {
-			result = primaryFormat__.parse(s);
+			return primaryFormat__.get().parse(s).getTime();
 		} catch (ParseException pe) {
 			try {
-				result = altFormat__.parse(s);
+				return altFormat__.get().parse(s).getTime();
 			} catch (ParseException pe2) {
 				throw new RuntimeException("Failed to ISO-8601 date parse " +
 					"input string: " + s, pe2);
 			}
 		}
-		return result;
 	}
 	
 	public static final DateFormat getNewInstance() {
@@ -88,4 +165,61 @@ public final class ISO8601DateFormat {
 		return ALTERNATIVE_DATE_FORMAT_STRING;
 	}
 	
+	/**
+	 * Parses a well-formed date, every field at its full width and in
+	 * range, from the start of the given String, ignoring any trailing
+	 * text.  Returns {@link #NOT_PARSED} for anything else.
+	 */
+	private static final long parseFast(final String s,
+		final DateTimeFormatter formatter) {
+		final ParsePosition position = new ParsePosition(0);
+		final TemporalAccessor parsed = formatter.parseUnresolved(s,
+			position);
+		if(parsed == null || position.getErrorIndex() >= 0) {
+			return NOT_PARSED;
+		}
+		final long year = parsed.getLong(YEAR);
+		final long month = parsed.getLong(MONTH_OF_YEAR);
+		final long day = parsed.getLong(DAY_OF_MONTH);
+		final long hour = parsed.getLong(HOUR_OF_DAY);
+		final long minute = parsed.getLong(MINUTE_OF_HOUR);
+		final long second = parsed.getLong(SECOND_OF_MINUTE);
+		final long milli = parsed.isSupported(MILLI_OF_SECOND) ?
+			parsed.getLong(MILLI_OF_SECOND) : 0L;
+		if(year < 1583 || month < 1 || month > 12 || day < 1 ||
+			day > IsoChronology.INSTANCE.date((int)year, (int)month, 1)
+				.lengthOfMonth() ||
+			hour > 23 || minute > 59 || second > 59) {
+			// Let SimpleDateFormat leniently roll this over, as it
+			// always has.
+			return NOT_PARSED;
+		}
+		final long epochDay = LocalDate.of((int)year, (int)month,
+			(int)day).toEpochDay();
+		return ((((epochDay * 24L + hour) * 60L + minute) * 60L + second) *
+			1000L) + milli;
+	}
+	
+	private static final DateTimeFormatter formatter(final boolean millis) {
+		final DateTimeFormatterBuilder builder = new DateTimeFormatterBuilder()
+			.appendValue(YEAR, 4).appendLiteral('-')
+			.appendValue(MONTH_OF_YEAR, 2).appendLiteral('-')
+			.appendValue(DAY_OF_MONTH, 2).appendLiteral('T')
+			.appendValue(HOUR_OF_DAY, 2).appendLiteral(':')
+			.appendValue(MINUTE_OF_HOUR, 2).appendLiteral(':')
+			.appendValue(SECOND_OF_MINUTE, 2);
+		if(millis) {
+			builder.appendLiteral('.').appendValue(MILLI_OF_SECOND, 3);
+		}
+		return builder.appendLiteral('Z').toFormatter(Locale.ROOT)
+			.withChronology(IsoChronology.INSTANCE)
+			.withZone(ZoneOffset.UTC);
+	}
+	
+	private static final DateFormat newGMTInstance(final String format) {
+		final DateFormat df = new SimpleDateFormat(format);
+		df.setTimeZone(new SimpleTimeZone(0, "GMT"));
+		return df;
+	}
+	
 }
@@ -0,0 +1,327 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.common.util;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.kolich.common.DefaultCharacterEncoding.UTF_8_CHARSET;
+import static com.kolich.common.util.URLEncodingUtils.EncodingMode.FORM;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.MultimapBuilder;
+
+/**
+ * A parsed application/x-www-form-urlencoded query string or form body.
+ * 
+ * The raw String is indexed in a single pass into a compact array of
+ * offsets, three ints per name/value pair; nothing is decoded until it
+ * is asked for, and names without any escapes are matched against the
+ * raw String directly.  Pairs keep the order they appear in, empty
+ * pairs are ignored, and a name without an '=' has an empty value.
+ * Decoded names are cached, so instances aren't thread-safe.
+ */
+public final class QueryString {
+	
+	/**
+	 * Ints per pair in the offsets array: the start of the pair, the
+	 * index of its '=' or -1 if none, and the end of the pair.
+	 */
+	private static final int STRIDE = 3;
+	
+	private final String raw_;
+	private final Charset charset_;
+	
+	private final int[] offsets_;
+	private final int size_;
+	
+	/**
+	 * Decoded names, filled in as they're needed.
+	 */
+	private final String[] names_;
+	
+	public QueryString(final String raw, final Charset charset) {
+		checkNotNull(raw, "Raw query string cannot be null.");
+		checkNotNull(charset, "Charset cannot be null.");
+		raw_ = raw;
+		charset_ = charset;
+		final int length = raw.length();
+		int[] offsets = new int[STRIDE * 8];
+		int size = 0;
+		// Skip a leading '?', if any.
+		int start = (length > 0 && raw.charAt(0) == '?') ? 1 : 0;
+		int equals = -1;
+		for(int i = start; i <= length; i++) {
+			final char c = (i < length) ? raw.charAt(i) : '&';
+			if(c == '=' && equals < 0) {
+				equals = i;
+			} else if(c == '&') {
+				if(i > start) {
+					if(offsets.length < (size + 1) * STRIDE) {
+						offsets = Arrays.copyOf(offsets, offsets.length * 2);
+					}
+					offsets[size * STRIDE] = start;
+					offsets[size * STRIDE + 1] = equals;
+					offsets[size * STRIDE + 2] = i;
+					size++;
+				}
+				start = i + 1;
+				equals = -1;
+			}
+		}
+		offsets_ = offsets;
+		size_ = size;
+		names_ = new String[size];
+	}
+	
+	public QueryString(final String raw) {
+		this(raw, UTF_8_CHARSET);
+	}
+	
+	/**
+	 * Returns the number of name/value pairs.
+	 */
+	public int size() {
+		return size_;
+	}
+	
+	public boolean isEmpty() {
+		return size_ == 0;
+	}
+	
+	/**
+	 * Returns the decoded name of the pair at the given index.
+	 */
+	public String getName(final int index) {
+		checkElementIndex(index, size_);
+		String name = names_[index];
+		if(name == null) {
+			name = names_[index] = decode(offsets_[index * STRIDE],
+				nameEnd(index));
+		}
+		return name;
+	}
+	
+	/**
+	 * Returns the decoded value of the pair at the given index.
+	 */
+	public String getValue(final int index) {
+		checkElementIndex(index, size_);
+		final int equals = offsets_[index * STRIDE + 1];
+		return (equals < 0) ? "" :
+			decode(equals + 1, offsets_[index * STRIDE + 2]);
+	}
+	
+	/**
+	 * Returns true if there is at least one pair with the given name.
+	 */
+	public boolean containsKey(final String name) {
+		return indexOf(name, 0) >= 0;
+	}
+	
+	/**
+	 * Returns the decoded value of the first pair with the given name,
+	 * or null if there isn't one.
+	 */
+	public String getFirst(final String name) {
+		final int index = indexOf(name, 0);
+		return (index < 0) ? null : getValue(index);
+	}
+	
+	/**
+	 * Returns the decoded values of every pair with the given name, in
+	 * order, or an empty list if there aren't any.
+	 */
+	public List<String> getAll(final String name) {
+		int index = indexOf(name, 0);
+		if(index < 0) {
+			return Collections.emptyList();
+		}
+		final List<String> values = new ArrayList<String>(2);
+		for(; index >= 0; index = indexOf(name, index + 1)) {
+			values.add(getValue(index));
+		}
+		return values;
+	}
+	
+	/**
+	 * Returns the distinct decoded names, in the order they first
+	 * appear.
+	 */
+	public Set<String> names() {
+		final Set<String> names = new LinkedHashSet<String>(size_ * 2);
+		for(int i = 0; i < size_; i++) {
+			names.add(getName(i));
+		}
+		return names;
+	}
+	
+	/**
+	 * Decodes every pair into a new multimap, keeping names and each
+	 * name's values in the order they appear.
+	 */
+	public ListMultimap<String,String> asMultimap() {
+		final ListMultimap<String,String> map =
+			MultimapBuilder.linkedHashKeys().arrayListValues().build();
+		for(int i = 0; i < size_; i++) {
+			map.put(getName(i), getValue(i));
+		}
+		return map;
+	}
+	
+	/**
+	 * Returns the raw, still encoded, query string.
+	 */
+	@Override
+	public String toString() {
+		return raw_;
+	}
+	
+	/**
+	 * Returns the index of the first pair at or after the given index
+	 * with the given decoded name, or -1 if there isn't one.
+	 */
+	private int indexOf(final String name, final int from) {
+		checkNotNull(name, "Name cannot be null.");
+		final int length = name.length();
+		for(int i = from; i < size_; i++) {
+			final int start = offsets_[i * STRIDE];
+			final int end = nameEnd(i);
+			if(names_[i] != null) {
+				if(names_[i].equals(name)) {
+					return i;
+				}
+			} else if(!URLEncodingUtils.needsDecoding(raw_, start, end,
+				FORM)) {
+				// Nothing to decode, so compare against the raw String.
+				if((end - start) == length &&
+					raw_.regionMatches(start, name, 0, length)) {
+					return i;
+				}
+			} else if(getName(i).equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	private int nameEnd(final int index) {
+		final int equals = offsets_[index * STRIDE + 1];
+		return (equals < 0) ? offsets_[index * STRIDE + 2] : equals;
+	}
+	
+	private String decode(final int start, final int end) {
+		if(!URLEncodingUtils.needsDecoding(raw_, start, end, FORM)) {
+			return raw_.substring(start, end);
+		}
+		final StringBuilder sb = new StringBuilder(end - start);
+		URLEncodingUtils.decode(raw_, start, end, charset_, FORM, sb);
+		return sb.toString();
+	}
+	
+	/**
+	 * Builds an encoded query string, appending each name/value pair
+	 * straight into a single buffer.  Not thread-safe.
+	 */
+	public static final class Builder {
+		
+		private final Charset charset_;
+		private final StringBuilder sb_;
+		
+		public Builder(final Charset charset) {
+			checkNotNull(charset, "Charset cannot be null.");
+			charset_ = charset;
+			sb_ = new StringBuilder();
+		}
+		
+		public Builder() {
+			this(UTF_8_CHARSET);
+		}
+		
+		/**
+		 * Appends the given name and value, both encoded.
+		 */
+		public Builder add(final String name, final String value) {
+			checkNotNull(name, "Name cannot be null.");
+			checkNotNull(value, "Value cannot be null.");
+			separate();
+			URLEncodingUtils.encode(name, 0, name.length(), charset_, FORM,
+				sb_);
+			sb_.append('=');
+			URLEncodingUtils.encode(value, 0, value.length(), charset_, FORM,
+				sb_);
+			return this;
+		}
+		
+		/**
+		 * Appends the given name, encoded, with an empty value.
+		 */
+		public Builder add(final String name) {
+			return add(name, "");
+		}
+		
+		/**
+		 * Appends each of the given values under the given name.
+		 */
+		public Builder addAll(final String name,
+			final Iterable<String> values) {
+			checkNotNull(values, "Values cannot be null.");
+			for(final String value : values) {
+				add(name, value);
+			}
+			return this;
+		}
+		
+		public QueryString build() {
+			return new QueryString(sb_.toString(), charset_);
+		}
+		
+		/**
+		 * Returns the encoded query string built so far, without a
+		 * leading '?'.
+		 */
+		@Override
+		public String toString() {
+			return sb_.toString();
+		}
+		
+		private void separate() {
+			if(sb_.length() > 0) {
+				sb_.append('&');
+			}
+		}
+		
+	}
+	
+}
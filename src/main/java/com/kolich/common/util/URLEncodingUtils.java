@@ -26,16 +26,86 @@
 
 package com.kolich.common.util;
 
-import static com.kolich.common.DefaultCharacterEncoding.UTF_8;
-import static java.net.URLDecoder.decode;
-import static java.net.URLEncoder.encode;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+import static com.kolich.common.DefaultCharacterEncoding.UTF_8_CHARSET;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
 
 import com.kolich.common.KolichCommonException;
 
+/**
+ * Table-driven URL encoding and decoding.  In {@link EncodingMode#FORM}
+ * mode, the default, output is identical to {@link java.net.URLEncoder}
+ * and {@link java.net.URLDecoder}; in {@link EncodingMode#PATH_SEGMENT}
+ * mode, everything RFC 3986 allows in a path segment is left alone and
+ * spaces become "%20".  Strings that need no encoding or decoding are
+ * returned as-is, without allocating anything.
+ * 
+ * Every method also comes in a flavor that works on a range of any
+ * {@link CharSequence}, so substrings don't have to be created first,
+ * and in flavors that append straight to a caller's
+ * {@link StringBuilder} or other {@link Appendable}, like a
+ * {@link java.io.Writer}, instead of returning a new String.
+ */
 public final class URLEncodingUtils {
 	
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+	
+	/**
+	 * Which characters are left alone, and how spaces are handled.
+	 */
+	public static enum EncodingMode {
+		
+		/**
+		 * application/x-www-form-urlencoded, exactly as
+		 * {@link java.net.URLEncoder}: only letters, digits and "-_.*" are
+		 * safe, and a space is encoded as a '+'.
+		 */
+		FORM("-_.*", true),
+		
+		/**
+		 * A single RFC 3986 path segment: the unreserved characters, the
+		 * sub-delimiters, ':' and '@' are safe; a '/' is encoded, and a
+		 * space is encoded as "%20".
+		 */
+		PATH_SEGMENT("-._~!$&'()*+,;=:@", false);
+		
+		/**
+		 * True for each ASCII character that is left alone.
+		 */
+		private final boolean[] safe_;
+		
+		/**
+		 * True if a space is encoded as, and a '+' decoded to, a space.
+		 */
+		private final boolean plusForSpace_;
+		
+		private EncodingMode(final String safe, final boolean plusForSpace) {
+			safe_ = new boolean[128];
+			for(char c = 'a'; c <= 'z'; c++) {
+				safe_[c] = true;
+			}
+			for(char c = 'A'; c <= 'Z'; c++) {
+				safe_[c] = true;
+			}
+			for(char c = '0'; c <= '9'; c++) {
+				safe_[c] = true;
+			}
+			for(int i = 0; i < safe.length(); i++) {
+				safe_[safe.charAt(i)] = true;
+			}
+			plusForSpace_ = plusForSpace;
+		}
+		
+		private boolean isSafe(final char c) {
+			return (c < 128) && safe_[c];
+		}
+		
+	}
+	
 	// Cannot be instantiated.
 	private URLEncodingUtils() { }
 	
@@ -46,7 +116,7 @@ public final class URLEncodingUtils {
 	 * @return a URL encoded String
 	 */
 	public static final String urlEncode(final String s) {
-		return urlEncode(s, null);
+		return urlEncode(s, UTF_8_CHARSET);
 	}
 	
 	/**
@@ -56,12 +126,55 @@ public final class URLEncodingUtils {
 	 * @return a URL encoded String
 	 */
 	public static final String urlEncode(final String s, final String enc) {
-		try {
-			return encode(s, (enc != null) ? enc : UTF_8);
-		} catch (UnsupportedEncodingException e) {
-			throw new KolichCommonException("Failed to URL encode string: " +
-				s, e);
+		return urlEncode(s, (enc != null) ?
+			forName(enc, "Failed to URL encode string: " + s) : UTF_8_CHARSET);
+	}
+	
+	/**
+	 * URL encodes the given String with the desired charset.  Strings
+	 * that contain nothing that needs encoding are returned as-is.
+	 * @param s the String to encode
+	 * @param charset the charset to encode with
+	 * @return a URL encoded String
+	 */
+	public static final String urlEncode(final String s,
+		final Charset charset) {
+		return urlEncode(s, charset, EncodingMode.FORM);
+	}
+	
+	/**
+	 * URL encodes the given String with our default character encoding,
+	 * likely UTF-8, in the given mode.
+	 * @param s the String to encode
+	 * @param mode form or path segment encoding
+	 * @return a URL encoded String
+	 */
+	public static final String urlEncode(final String s,
+		final EncodingMode mode) {
+		return urlEncode(s, UTF_8_CHARSET, mode);
+	}
+	
+	/**
+	 * URL encodes the given String with the desired charset, in the
+	 * given mode.  Strings that contain nothing that needs encoding are
+	 * returned as-is; otherwise the result is built in a single pass
+	 * into a buffer sized up front.
+	 * @param s the String to encode
+	 * @param charset the charset to encode with
+	 * @param mode form or path segment encoding
+	 * @return a URL encoded String
+	 */
+	public static final String urlEncode(final String s,
+		final Charset charset, final EncodingMode mode) {
+		checkNotNull(s, "String to encode cannot be null.");
+		final int length = s.length();
+		final int encodedLength = encodedLength(s, 0, length, charset, mode);
+		if(encodedLength < 0) {
+			return s;
 		}
+		final StringBuilder sb = new StringBuilder(encodedLength);
+		encode(s, 0, length, charset, mode, sb);
+		return sb.toString();
 	}
 	
 	/**
@@ -71,7 +184,7 @@ public final class URLEncodingUtils {
 	 * @return a URL decoded String
 	 */
 	public static final String urlDecode(final String s) {
-		return urlDecode(s, null);
+		return urlDecode(s, UTF_8_CHARSET);
 	}
 	
 	/**
@@ -81,11 +194,542 @@ public final class URLEncodingUtils {
 	 * @return a URL decoded String
 	 */
 	public static final String urlDecode(final String s, final String enc) {
+		return urlDecode(s, (enc != null) ?
+			forName(enc, "Failed to URL decode string: " + s) : UTF_8_CHARSET);
+	}
+	
+	/**
+	 * URL decodes the given String with the desired charset.  Strings
+	 * with no '%' escapes and no '+' characters are returned as-is.
+	 * @param s the String to decode
+	 * @param charset the charset to decode with
+	 * @return a URL decoded String
+	 * @throws IllegalArgumentException if the String contains a
+	 * malformed '%' escape
+	 */
+	public static final String urlDecode(final String s,
+		final Charset charset) {
+		return urlDecode(s, charset, EncodingMode.FORM);
+	}
+	
+	/**
+	 * URL decodes the given String with our default character encoding,
+	 * likely UTF-8, in the given mode.
+	 * @param s the String to decode
+	 * @param mode form or path segment decoding
+	 * @return a URL decoded String
+	 * @throws IllegalArgumentException if the String contains a
+	 * malformed '%' escape
+	 */
+	public static final String urlDecode(final String s,
+		final EncodingMode mode) {
+		return urlDecode(s, UTF_8_CHARSET, mode);
+	}
+	
+	/**
+	 * URL decodes the given String with the desired charset, in the given
+	 * mode; only {@link EncodingMode#FORM} decodes a '+' to a space.
+	 * Strings with nothing to decode are returned as-is.
+	 * @param s the String to decode
+	 * @param charset the charset to decode with
+	 * @param mode form or path segment decoding
+	 * @return a URL decoded String
+	 * @throws IllegalArgumentException if the String contains a
+	 * malformed '%' escape
+	 */
+	public static final String urlDecode(final String s,
+		final Charset charset, final EncodingMode mode) {
+		checkNotNull(s, "String to decode cannot be null.");
+		final int length = s.length();
+		if(!needsDecoding(s, 0, length, mode)) {
+			return s;
+		}
+		final StringBuilder sb = new StringBuilder(length);
+		decode(s, 0, length, charset, mode, sb);
+		return sb.toString();
+	}
+	
+	/**
+	 * URL encodes the given range of characters with our default
+	 * character encoding, likely UTF-8, in form mode.
+	 * @param s the characters to encode
+	 * @param start the index of the first character to encode
+	 * @param end the index after the last character to encode
+	 * @return a URL encoded String
+	 */
+	public static final String urlEncode(final CharSequence s,
+		final int start, final int end) {
+		return urlEncode(s, start, end, UTF_8_CHARSET, EncodingMode.FORM);
+	}
+	
+	/**
+	 * URL encodes the given range of characters with the desired charset,
+	 * in the given mode.
+	 * @param s the characters to encode
+	 * @param start the index of the first character to encode
+	 * @param end the index after the last character to encode
+	 * @param charset the charset to encode with
+	 * @param mode form or path segment encoding
+	 * @return a URL encoded String
+	 */
+	public static final String urlEncode(final CharSequence s,
+		final int start, final int end, final Charset charset,
+		final EncodingMode mode) {
+		checkRange(s, start, end);
+		final int encodedLength = encodedLength(s, start, end, charset, mode);
+		if(encodedLength < 0) {
+			return s.subSequence(start, end).toString();
+		}
+		final StringBuilder sb = new StringBuilder(encodedLength);
+		encode(s, start, end, charset, mode, sb);
+		return sb.toString();
+	}
+	
+	/**
+	 * URL encodes the given characters with our default character
+	 * encoding, likely UTF-8, in form mode, appending the result to the
+	 * given buffer.
+	 * @param s the characters to encode
+	 * @param sb the buffer to append to
+	 * @return the given buffer
+	 */
+	public static final StringBuilder urlEncode(final CharSequence s,
+		final StringBuilder sb) {
+		checkNotNull(s, "Characters to encode cannot be null.");
+		return urlEncode(s, 0, s.length(), UTF_8_CHARSET, EncodingMode.FORM,
+			sb);
+	}
+	
+	/**
+	 * URL encodes the given range of characters with the desired charset,
+	 * in the given mode, appending the result to the given buffer.
+	 * @param s the characters to encode
+	 * @param start the index of the first character to encode
+	 * @param end the index after the last character to encode
+	 * @param charset the charset to encode with
+	 * @param mode form or path segment encoding
+	 * @param sb the buffer to append to
+	 * @return the given buffer
+	 */
+	public static final StringBuilder urlEncode(final CharSequence s,
+		final int start, final int end, final Charset charset,
+		final EncodingMode mode, final StringBuilder sb) {
+		checkRange(s, start, end);
+		checkNotNull(sb, "Buffer to append to cannot be null.");
+		encode(s, start, end, charset, mode, sb);
+		return sb;
+	}
+	
+	/**
+	 * URL encodes the given characters with our default character
+	 * encoding, likely UTF-8, in form mode, appending the result to the
+	 * given {@link Appendable}, like a {@link java.io.Writer}.
+	 * @param s the characters to encode
+	 * @param out where to append to
+	 * @return the given {@link Appendable}
+	 * @throws IOException if appending fails
+	 */
+	public static final Appendable urlEncode(final CharSequence s,
+		final Appendable out) throws IOException {
+		checkNotNull(s, "Characters to encode cannot be null.");
+		return urlEncode(s, 0, s.length(), UTF_8_CHARSET, EncodingMode.FORM,
+			out);
+	}
+	
+	/**
+	 * URL encodes the given range of characters with the desired charset,
+	 * in the given mode, appending the result to the given
+	 * {@link Appendable}, like a {@link java.io.Writer}.  A range that
+	 * needs no encoding is appended as-is.
+	 * @param s the characters to encode
+	 * @param start the index of the first character to encode
+	 * @param end the index after the last character to encode
+	 * @param charset the charset to encode with
+	 * @param mode form or path segment encoding
+	 * @param out where to append to
+	 * @return the given {@link Appendable}
+	 * @throws IOException if appending fails
+	 */
+	public static final Appendable urlEncode(final CharSequence s,
+		final int start, final int end, final Charset charset,
+		final EncodingMode mode, final Appendable out) throws IOException {
+		checkRange(s, start, end);
+		checkNotNull(out, "Appendable cannot be null.");
+		if(out instanceof StringBuilder) {
+			encode(s, start, end, charset, mode, (StringBuilder)out);
+			return out;
+		}
+		final int encodedLength = encodedLength(s, start, end, charset, mode);
+		if(encodedLength < 0) {
+			return out.append(s, start, end);
+		}
+		// Encode into one buffer and hand it over in a single append,
+		// rather than a call per character.
+		final StringBuilder sb = new StringBuilder(encodedLength);
+		encode(s, start, end, charset, mode, sb);
+		return out.append(sb);
+	}
+	
+	/**
+	 * URL decodes the given range of characters with our default
+	 * character encoding, likely UTF-8, in form mode.
+	 * @param s the characters to decode
+	 * @param start the index of the first character to decode
+	 * @param end the index after the last character to decode
+	 * @return a URL decoded String
+	 * @throws IllegalArgumentException if the range contains a
+	 * malformed '%' escape
+	 */
+	public static final String urlDecode(final CharSequence s,
+		final int start, final int end) {
+		return urlDecode(s, start, end, UTF_8_CHARSET, EncodingMode.FORM);
+	}
+	
+	/**
+	 * URL decodes the given range of characters with the desired charset,
+	 * in the given mode.
+	 * @param s the characters to decode
+	 * @param start the index of the first character to decode
+	 * @param end the index after the last character to decode
+	 * @param charset the charset to decode with
+	 * @param mode form or path segment decoding
+	 * @return a URL decoded String
+	 * @throws IllegalArgumentException if the range contains a
+	 * malformed '%' escape
+	 */
+	public static final String urlDecode(final CharSequence s,
+		final int start, final int end, final Charset charset,
+		final EncodingMode mode) {
+		checkRange(s, start, end);
+		if(!needsDecoding(s, start, end, mode)) {
+			return s.subSequence(start, end).toString();
+		}
+		final StringBuilder sb = new StringBuilder(end - start);
+		decode(s, start, end, charset, mode, sb);
+		return sb.toString();
+	}
+	
+	/**
+	 * URL decodes the given characters with our default character
+	 * encoding, likely UTF-8, in form mode, appending the result to the
+	 * given buffer.
+	 * @param s the characters to decode
+	 * @param sb the buffer to append to
+	 * @return the given buffer
+	 * @throws IllegalArgumentException if the characters contain a
+	 * malformed '%' escape, in which case nothing is appended
+	 */
+	public static final StringBuilder urlDecode(final CharSequence s,
+		final StringBuilder sb) {
+		checkNotNull(s, "Characters to decode cannot be null.");
+		return urlDecode(s, 0, s.length(), UTF_8_CHARSET, EncodingMode.FORM,
+			sb);
+	}
+	
+	/**
+	 * URL decodes the given range of characters with the desired charset,
+	 * in the given mode, appending the result to the given buffer.
+	 * @param s the characters to decode
+	 * @param start the index of the first character to decode
+	 * @param end the index after the last character to decode
+	 * @param charset the charset to decode with
+	 * @param mode form or path segment decoding
+	 * @param sb the buffer to append to
+	 * @return the given buffer
+	 * @throws IllegalArgumentException if the range contains a
+	 * malformed '%' escape, in which case nothing is appended
+	 */
+	public static final StringBuilder urlDecode(final CharSequence s,
+		final int start, final int end, final Charset charset,
+		final EncodingMode mode, final StringBuilder sb) {
+		checkRange(s, start, end);
+		checkNotNull(sb, "Buffer to append to cannot be null.");
+		decode(s, start, end, charset, mode, sb);
+		return sb;
+	}
+	
+	/**
+	 * URL decodes the given characters with our default character
+	 * encoding, likely UTF-8, in form mode, appending the result to the
+	 * given {@link Appendable}, like a {@link java.io.Writer}.
+	 * @param s the characters to decode
+	 * @param out where to append to
+	 * @return the given {@link Appendable}
+	 * @throws IOException if appending fails
+	 * @throws IllegalArgumentException if the characters contain a
+	 * malformed '%' escape, in which case nothing is appended
+	 */
+	public static final Appendable urlDecode(final CharSequence s,
+		final Appendable out) throws IOException {
+		checkNotNull(s, "Characters to decode cannot be null.");
+		return urlDecode(s, 0, s.length(), UTF_8_CHARSET, EncodingMode.FORM,
+			out);
+	}
+	
+	/**
+	 * URL decodes the given range of characters with the desired charset,
+	 * in the given mode, appending the result to the given
+	 * {@link Appendable}, like a {@link java.io.Writer}.  A range that
+	 * needs no decoding is appended as-is.
+	 * @param s the characters to decode
+	 * @param start the index of the first character to decode
+	 * @param end the index after the last character to decode
+	 * @param charset the charset to decode with
+	 * @param mode form or path segment decoding
+	 * @param out where to append to
+	 * @return the given {@link Appendable}
+	 * @throws IOException if appending fails
+	 * @throws IllegalArgumentException if the range contains a
+	 * malformed '%' escape, in which case nothing is appended
+	 */
+	public static final Appendable urlDecode(final CharSequence s,
+		final int start, final int end, final Charset charset,
+		final EncodingMode mode, final Appendable out) throws IOException {
+		checkRange(s, start, end);
+		checkNotNull(out, "Appendable cannot be null.");
+		if(out instanceof StringBuilder) {
+			decode(s, start, end, charset, mode, (StringBuilder)out);
+			return out;
+		} else if(!needsDecoding(s, start, end, mode)) {
+			return out.append(s, start, end);
+		}
+		final StringBuilder sb = new StringBuilder(end - start);
+		decode(s, start, end, charset, mode, sb);
+		return out.append(sb);
+	}
+	
+	/**
+	 * Returns the length of the given range once encoded, or -1 if
+	 * nothing in it needs encoding.  Exact for UTF-8, and an estimate
+	 * for any other charset.
+	 */
+	static final int encodedLength(final CharSequence s, final int start,
+		final int end, final Charset charset, final EncodingMode mode) {
+		final boolean utf8 = UTF_8_CHARSET.equals(charset);
+		boolean needed = false;
+		int length = 0;
+		for(int i = start; i < end; i++) {
+			final char c = s.charAt(i);
+			if(mode.isSafe(c)) {
+				length++;
+				continue;
+			}
+			needed = true;
+			if(c == ' ' && mode.plusForSpace_) {
+				length++;
+			} else if(!utf8) {
+				// Up to four bytes per char, for most charsets.
+				length += 12;
+			} else if(c < 0x80) {
+				length += 3;
+			} else if(c < 0x800) {
+				length += 6;
+			} else if(Character.isHighSurrogate(c) && (i + 1 < end) &&
+				Character.isLowSurrogate(s.charAt(i + 1))) {
+				length += 12;
+				i++;
+			} else if(Character.isSurrogate(c)) {
+				// Encoded as a '?'.
+				length += 3;
+			} else {
+				length += 9;
+			}
+		}
+		return needed ? length : -1;
+	}
+	
+	/**
+	 * URL encodes the given range, appending the result to the given
+	 * buffer.  A run of characters that need encoding is converted to
+	 * bytes with the charset all at once, exactly as
+	 * {@link java.net.URLEncoder} does.
+	 */
+	static final void encode(final CharSequence s, final int start,
+		final int end, final Charset charset, final EncodingMode mode,
+		final StringBuilder sb) {
+		final boolean utf8 = UTF_8_CHARSET.equals(charset);
+		int i = start;
+		while(i < end) {
+			final char c = s.charAt(i);
+			if(mode.isSafe(c)) {
+				sb.append(c);
+				i++;
+			} else if(c == ' ' && mode.plusForSpace_) {
+				sb.append('+');
+				i++;
+			} else if(utf8) {
+				i = encodeUtf8(s, i, end, sb);
+			} else {
+				// Find the end of this run of characters to encode.
+				int j = i + 1;
+				while(j < end) {
+					final char d = s.charAt(j);
+					if(mode.isSafe(d) || (d == ' ' && mode.plusForSpace_)) {
+						break;
+					}
+					j++;
+				}
+				for(final byte b : s.subSequence(i, j).toString()
+					.getBytes(charset)) {
+					appendEscape(b, sb);
+				}
+				i = j;
+			}
+		}
+	}
+	
+	/**
+	 * Returns true if the given range contains a '%' escape, or in form
+	 * mode a '+'.
+	 */
+	static final boolean needsDecoding(final CharSequence s, final int start,
+		final int end, final EncodingMode mode) {
+		for(int i = start; i < end; i++) {
+			final char c = s.charAt(i);
+			if(c == '%' || (c == '+' && mode.plusForSpace_)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * URL decodes the given range, appending the result to the given
+	 * buffer.  A run of '%' escapes is decoded with the charset all at
+	 * once, exactly as {@link java.net.URLDecoder} does.
+	 * @throws IllegalArgumentException if the range contains a malformed
+	 * '%' escape, in which case the buffer is left as it was
+	 */
+	static final void decode(final CharSequence s, final int start,
+		final int end, final Charset charset, final EncodingMode mode,
+		final StringBuilder sb) {
+		// Rolled back to on a malformed escape, so callers never see
+		// a partially decoded result.
+		final int mark = sb.length();
+		byte[] bytes = null;
+		int i = start;
+		while(i < end) {
+			final char c = s.charAt(i);
+			if(c == '+' && mode.plusForSpace_) {
+				sb.append(' ');
+				i++;
+				continue;
+			} else if(c != '%') {
+				sb.append(c);
+				i++;
+				continue;
+			}
+			if(bytes == null) {
+				// Enough room for the longest possible run of escapes.
+				bytes = new byte[(end - i) / 3];
+			}
+			int length = 0;
+			boolean ascii = true;
+			while((i < end) && (s.charAt(i) == '%')) {
+				if(i + 2 >= end) {
+					sb.setLength(mark);
+					throw new IllegalArgumentException("Incomplete " +
+						"trailing escape (%) pattern at: " + i);
+				}
+				final int hi = hexValue(s.charAt(i + 1));
+				final int lo = hexValue(s.charAt(i + 2));
+				if(hi < 0 || lo < 0) {
+					sb.setLength(mark);
+					throw new IllegalArgumentException("Illegal hex " +
+						"characters in escape (%) pattern at: " + i);
+				}
+				final byte b = (byte)((hi << 4) | lo);
+				ascii &= (b >= 0);
+				bytes[length++] = b;
+				i += 3;
+			}
+			if(ascii && isAsciiCompatible(charset)) {
+				for(int j = 0; j < length; j++) {
+					sb.append((char)bytes[j]);
+				}
+			} else {
+				sb.append(new String(bytes, 0, length, charset));
+			}
+		}
+	}
+	
+	/**
+	 * Encodes one character, or one surrogate pair, at the given index
+	 * as UTF-8 escapes, returning the index just past it.  A lone
+	 * surrogate is encoded as a '?', like {@link String#getBytes}.
+	 */
+	private static final int encodeUtf8(final CharSequence s, final int i,
+		final int end, final StringBuilder sb) {
+		final char c = s.charAt(i);
+		if(c < 0x80) {
+			appendEscape(c, sb);
+		} else if(c < 0x800) {
+			appendEscape(0xC0 | (c >> 6), sb);
+			appendEscape(0x80 | (c & 0x3F), sb);
+		} else if(Character.isSurrogate(c)) {
+			if(Character.isHighSurrogate(c) && (i + 1 < end) &&
+				Character.isLowSurrogate(s.charAt(i + 1))) {
+				final int cp = Character.toCodePoint(c, s.charAt(i + 1));
+				appendEscape(0xF0 | (cp >> 18), sb);
+				appendEscape(0x80 | ((cp >> 12) & 0x3F), sb);
+				appendEscape(0x80 | ((cp >> 6) & 0x3F), sb);
+				appendEscape(0x80 | (cp & 0x3F), sb);
+				return i + 2;
+			}
+			appendEscape('?', sb);
+		} else {
+			appendEscape(0xE0 | (c >> 12), sb);
+			appendEscape(0x80 | ((c >> 6) & 0x3F), sb);
+			appendEscape(0x80 | (c & 0x3F), sb);
+		}
+		return i + 1;
+	}
+	
+	private static final void appendEscape(final int b,
+		final StringBuilder sb) {
+		sb.append('%')
+			.append(HEX_DIGITS[(b >> 4) & 0x0F])
+			.append(HEX_DIGITS[b & 0x0F]);
+	}
+	
+	/**
+	 * Returns the value of the given ASCII hex digit, either case, or -1
+	 * if it isn't one.
+	 */
+	private static final int hexValue(final char c) {
+		if(c >= '0' && c <= '9') {
+			return c - '0';
+		} else if(c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		} else if(c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Returns true if ASCII bytes decode to the same chars in the given
+	 * charset; checked for the common charsets only.
+	 */
+	private static final boolean isAsciiCompatible(final Charset charset) {
+		final String name = charset.name();
+		return "UTF-8".equals(name) || "ISO-8859-1".equals(name) ||
+			"US-ASCII".equals(name) || "windows-1252".equals(name);
+	}
+	
+	private static final void checkRange(final CharSequence s,
+		final int start, final int end) {
+		checkNotNull(s, "Characters cannot be null.");
+		checkPositionIndexes(start, end, s.length());
+	}
+	
+	private static final Charset forName(final String enc,
+		final String message) {
 		try {
-			return decode(s, (enc != null) ? enc : UTF_8);
-		} catch (UnsupportedEncodingException e) {
-			throw new KolichCommonException("Failed to URL decode string: " +
-				s, e);
+			return Charset.forName(enc);
+		} catch (IllegalArgumentException e) {
+			throw new KolichCommonException(message,
+				new UnsupportedEncodingException(enc));
 		}
 	}
 
@@ -0,0 +1,222 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.common.util.crypt;
+
+import java.util.Arrays;
+
+/**
+ * A table-driven base-32 codec over byte arrays, with no per-call object
+ * allocation, using the "extended hex" alphabet of RFC 4648 with padding,
+ * the same as commons-codec's <code>new Base32(true)</code>.  Decoding
+ * matches commons-codec exactly: any character outside the alphabet,
+ * including lower case letters, is skipped, decoding stops at the first
+ * pad character and a trailing partial quantum yields as many whole
+ * bytes as it has bits for.
+ * 
+ * Also encodes, but doesn't decode, with the standard RFC 4648
+ * alphabet.
+ */
+final class Base32Codec {
+	
+	static final byte PAD = '=';
+	
+	static final byte[] HEX_ALPHABET = new byte[] {
+		'0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+		'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M',
+		'N', 'O', 'P', 'Q', 'R', 'S', 'T', 'U', 'V'
+	};
+	
+	/**
+	 * The standard RFC 4648 alphabet, encode only.
+	 */
+	static final byte[] STANDARD_ALPHABET = new byte[] {
+		'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M',
+		'N', 'O', 'P', 'Q', 'R', 'S', 'T', 'U', 'V', 'W', 'X', 'Y', 'Z',
+		'2', '3', '4', '5', '6', '7'
+	};
+	
+	/**
+	 * Maps an ASCII character to its 5-bit value, or to -1 if it isn't
+	 * in the alphabet.
+	 */
+	static final byte[] DECODE_TABLE = new byte[128];
+	static {
+		Arrays.fill(DECODE_TABLE, (byte)-1);
+		for(int i = 0; i < HEX_ALPHABET.length; i++) {
+			DECODE_TABLE[HEX_ALPHABET[i]] = (byte)i;
+		}
+		// The commons-codec table this replaces maps 'W' to 32, which
+		// carries into the previous quintet; kept for compatibility.
+		DECODE_TABLE['W'] = 32;
+	}
+	
+	// Cannot be instantiated.
+	private Base32Codec() { }
+	
+	/**
+	 * Returns the exact number of characters, padding included, encoding
+	 * the given number of bytes produces.
+	 */
+	static final int encodedLength(final int length) {
+		return (int)((((long)length + 4) / 5) * 8);
+	}
+	
+	/**
+	 * Returns the exact number of characters encoding the given number
+	 * of bytes produces, with or without padding.
+	 */
+	static final int encodedLength(final int length, final boolean pad) {
+		return pad ? encodedLength(length) :
+			(int)(((long)length * 8 + 4) / 5);
+	}
+	
+	/**
+	 * Encodes the given range of bytes into the given destination at the
+	 * given offset, returning the number of characters written.  The
+	 * destination must have room for {@link #encodedLength(int)} of them.
+	 */
+	static final int encode(final byte[] src, final int offset,
+		final int length, final byte[] dst, final int dstOffset) {
+		int s = offset, d = dstOffset;
+		final int end = offset + length;
+		while(s < end) {
+			final int n = Math.min(5, end - s);
+			long bits = 0L;
+			for(int i = 0; i < 5; i++) {
+				bits = (bits << 8) | ((i < n) ? (src[s + i] & 0xFF) : 0);
+			}
+			s += n;
+			// 1 to 5 bytes need 2, 4, 5, 7 or 8 characters.
+			final int chars = (n * 8 + 4) / 5;
+			for(int i = 0; i < 8; i++) {
+				dst[d++] = (i < chars) ?
+					HEX_ALPHABET[(int)(bits >>> (35 - i * 5)) & 0x1F] : PAD;
+			}
+		}
+		return d - dstOffset;
+	}
+	
+	/**
+	 * Encodes the given range of bytes into the given destination char
+	 * array at the given offset, with the given alphabet and with or
+	 * without padding, returning the number of characters written.  The
+	 * destination must have room for {@link #encodedLength(int, boolean)}
+	 * of them.
+	 */
+	static final int encode(final byte[] src, final int offset,
+		final int length, final char[] dst, final int dstOffset,
+		final byte[] alphabet, final boolean pad) {
+		int s = offset, d = dstOffset;
+		final int end = offset + length;
+		while(s < end) {
+			final int n = Math.min(5, end - s);
+			long bits = 0L;
+			for(int i = 0; i < 5; i++) {
+				bits = (bits << 8) | ((i < n) ? (src[s + i] & 0xFF) : 0);
+			}
+			s += n;
+			final int chars = (n * 8 + 4) / 5;
+			for(int i = 0; i < chars; i++) {
+				dst[d++] = (char)alphabet[(int)(bits >>> (35 - i * 5)) & 0x1F];
+			}
+			for(int i = chars; pad && i < 8; i++) {
+				dst[d++] = PAD;
+			}
+		}
+		return d - dstOffset;
+	}
+	
+	/**
+	 * Returns the exact number of bytes decoding the given range of
+	 * characters produces.
+	 */
+	static final int decodedLength(final byte[] src, final int offset,
+		final int length) {
+		long quintets = 0L;
+		for(int i = offset, end = offset + length; i < end; i++) {
+			final byte b = src[i];
+			if(b == PAD) {
+				break;
+			} else if(b >= 0 && DECODE_TABLE[b] >= 0) {
+				quintets++;
+			}
+		}
+		return (int)((quintets * 5) / 8);
+	}
+	
+	/**
+	 * Decodes the given range of characters into the given destination
+	 * at the given offset, returning the number of bytes written.  The
+	 * destination must have room for
+	 * {@link #decodedLength(byte[], int, int)} of them.
+	 */
+	static final int decode(final byte[] src, final int offset,
+		final int length, final byte[] dst, final int dstOffset) {
+		int d = dstOffset, quintets = 0;
+		long bits = 0L;
+		for(int i = offset, end = offset + length; i < end; i++) {
+			final byte b = src[i];
+			if(b == PAD) {
+				break;
+			}
+			final int value;
+			if(b < 0 || (value = DECODE_TABLE[b]) < 0) {
+				continue;
+			}
+			bits = (bits << 5) + value;
+			if(++quintets == 8) {
+				d = put(bits, 5, dst, d);
+				bits = 0L;
+				quintets = 0;
+			}
+		}
+		return finish(bits, quintets, dst, d) - dstOffset;
+	}
+	
+	/**
+	 * Writes the whole bytes left in a trailing partial quantum of the
+	 * given number of quintets, returning the offset just past them.
+	 */
+	static final int finish(final long bits, final int quintets,
+		final byte[] dst, final int d) {
+		final int bytes = (quintets * 5) / 8;
+		return put(bits >>> ((quintets * 5) % 8), bytes, dst, d);
+	}
+	
+	/**
+	 * Writes the low order given number of bytes of the given bits, most
+	 * significant first, returning the offset just past them.
+	 */
+	private static final int put(final long bits, final int bytes,
+		final byte[] dst, int d) {
+		for(int i = bytes - 1; i >= 0; i--) {
+			dst[d++] = (byte)(bits >>> (i * 8));
+		}
+		return d;
+	}
+	
+}
@@ -26,11 +26,15 @@
 
 package com.kolich.common.util.crypt;
 
+import static com.google.common.base.Preconditions.checkPositionIndexes;
 import static org.apache.commons.codec.binary.StringUtils.getBytesUtf8;
 import static org.apache.commons.codec.binary.StringUtils.newStringUtf8;
 
-import org.apache.commons.codec.binary.Base32;
-
+/**
+ * Base-32 encoding and decoding with the "extended hex" alphabet,
+ * compatible with commons-codec's <code>new Base32(true)</code>, through
+ * a table-driven codec that allocates nothing but its output.
+ */
 public final class Base32Utils {
 	
 	// Cannot be instantiated.
@@ -53,7 +57,37 @@ public final class Base32Utils {
 	 * @return
 	 */
 	public static final byte[] encodeBase32(final byte[] encode) {
-		return new Base32(true).encode(encode);
+		if(encode == null || encode.length == 0) {
+			return encode;
+		}
+		final byte[] encoded = new byte[Base32Codec.encodedLength(
+			encode.length)];
+		Base32Codec.encode(encode, 0, encode.length, encoded, 0);
+		return encoded;
+	}
+	
+	/**
+	 * Returns the exact length of the unpadded encoding of the given
+	 * number of bytes with the standard RFC 4648 alphabet.
+	 */
+	public static final int encodedLengthStandard(final int length) {
+		return Base32Codec.encodedLength(length, false);
+	}
+	
+	/**
+	 * Encodes the given range of bytes with the standard RFC 4648
+	 * alphabet (A-Z, 2-7), not "extended hex", and without padding, into
+	 * the given destination at the given offset, returning the number of
+	 * chars written, exactly {@link #encodedLengthStandard(int)}.
+	 */
+	public static final int encodeBase32Standard(final byte[] encode,
+		final int offset, final int length, final char[] dst,
+		final int dstOffset) {
+		checkPositionIndexes(offset, offset + length, encode.length);
+		checkPositionIndexes(dstOffset, dstOffset +
+			encodedLengthStandard(length), dst.length);
+		return Base32Codec.encode(encode, offset, length, dst, dstOffset,
+			Base32Codec.STANDARD_ALPHABET, false);
 	}
 		
 	/**
@@ -73,7 +107,13 @@ public final class Base32Utils {
 	 * @return
 	 */
 	public static final byte[] decodeBase32(final byte[] decode) {
-		return new Base32(true).decode(decode);
+		if(decode == null || decode.length == 0) {
+			return decode;
+		}
+		final byte[] decoded = new byte[Base32Codec.decodedLength(decode, 0,
+			decode.length)];
+		Base32Codec.decode(decode, 0, decode.length, decoded, 0);
+		return decoded;
 	}
 	
 }
@@ -0,0 +1,409 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.common.util.crypt;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A table-driven base-64 codec over byte and char arrays, and byte
+ * buffers, with no per-call object allocation.  Decoding matches the
+ * lenient decoder in commons-codec exactly: both the standard and
+ * URL-safe alphabets are accepted, any other character is skipped,
+ * decoding stops at the first pad character and a trailing partial
+ * quantum yields as many whole bytes as it has bits for.
+ */
+final class Base64Codec {
+	
+	static final byte PAD = '=';
+	
+	static final byte[] STANDARD_ALPHABET = alphabet(
+		"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/");
+	static final byte[] URL_SAFE_ALPHABET = alphabet(
+		"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_");
+	
+	/**
+	 * Maps an ASCII character to its 6-bit value, in either alphabet, or
+	 * to -1 if it isn't a base-64 character.
+	 */
+	static final byte[] DECODE_TABLE = new byte[128];
+	static {
+		Arrays.fill(DECODE_TABLE, (byte)-1);
+		for(int i = 0; i < 64; i++) {
+			DECODE_TABLE[STANDARD_ALPHABET[i]] = (byte)i;
+			DECODE_TABLE[URL_SAFE_ALPHABET[i]] = (byte)i;
+		}
+	}
+	
+	// Cannot be instantiated.
+	private Base64Codec() { }
+	
+	/**
+	 * Returns the exact number of characters encoding the given number
+	 * of bytes produces, with or without padding.
+	 */
+	static final int encodedLength(final int length, final boolean pad) {
+		return pad ? ((length + 2) / 3) * 4 : (length / 3) * 4 +
+			((length % 3) == 0 ? 0 : (length % 3) + 1);
+	}
+	
+	/**
+	 * Encodes the given range of bytes into the given destination at the
+	 * given offset, with the given alphabet and with or without padding,
+	 * returning the number of characters written.  The destination must
+	 * have room for {@link #encodedLength(int, boolean)} of them.
+	 */
+	static final int encode(final byte[] src, final int offset,
+		final int length, final byte[] dst, final int dstOffset,
+		final byte[] alphabet, final boolean pad) {
+		int s = offset, d = dstOffset;
+		for(final int end = offset + length - (length % 3); s < end;
+			s += 3) {
+			final int bits = (src[s] & 0xFF) << 16 |
+				(src[s + 1] & 0xFF) << 8 | (src[s + 2] & 0xFF);
+			dst[d++] = alphabet[bits >>> 18];
+			dst[d++] = alphabet[(bits >>> 12) & 0x3F];
+			dst[d++] = alphabet[(bits >>> 6) & 0x3F];
+			dst[d++] = alphabet[bits & 0x3F];
+		}
+		final int remaining = offset + length - s;
+		if(remaining > 0) {
+			final int bits = (src[s] & 0xFF) << 16 |
+				((remaining == 2) ? (src[s + 1] & 0xFF) << 8 : 0);
+			dst[d++] = alphabet[bits >>> 18];
+			dst[d++] = alphabet[(bits >>> 12) & 0x3F];
+			if(remaining == 2) {
+				dst[d++] = alphabet[(bits >>> 6) & 0x3F];
+			} else if(pad) {
+				dst[d++] = PAD;
+			}
+			if(pad) {
+				dst[d++] = PAD;
+			}
+		}
+		return d - dstOffset;
+	}
+	
+	/**
+	 * Encodes the given range of bytes into the given destination char
+	 * array.
+	 * @see #encode(byte[], int, int, byte[], int, byte[], boolean)
+	 */
+	static final int encode(final byte[] src, final int offset,
+		final int length, final char[] dst, final int dstOffset,
+		final byte[] alphabet, final boolean pad) {
+		int s = offset, d = dstOffset;
+		for(final int end = offset + length - (length % 3); s < end;
+			s += 3) {
+			final int bits = (src[s] & 0xFF) << 16 |
+				(src[s + 1] & 0xFF) << 8 | (src[s + 2] & 0xFF);
+			dst[d++] = (char)alphabet[bits >>> 18];
+			dst[d++] = (char)alphabet[(bits >>> 12) & 0x3F];
+			dst[d++] = (char)alphabet[(bits >>> 6) & 0x3F];
+			dst[d++] = (char)alphabet[bits & 0x3F];
+		}
+		final int remaining = offset + length - s;
+		if(remaining > 0) {
+			final int bits = (src[s] & 0xFF) << 16 |
+				((remaining == 2) ? (src[s + 1] & 0xFF) << 8 : 0);
+			dst[d++] = (char)alphabet[bits >>> 18];
+			dst[d++] = (char)alphabet[(bits >>> 12) & 0x3F];
+			if(remaining == 2) {
+				dst[d++] = (char)alphabet[(bits >>> 6) & 0x3F];
+			} else if(pad) {
+				dst[d++] = PAD;
+			}
+			if(pad) {
+				dst[d++] = PAD;
+			}
+		}
+		return d - dstOffset;
+	}
+	
+	/**
+	 * Encodes the remaining bytes of the given source buffer into the
+	 * given destination buffer, advancing both, for buffers that aren't
+	 * backed by arrays.
+	 * @see #encode(byte[], int, int, byte[], int, byte[], boolean)
+	 */
+	static final int encode(final ByteBuffer src, final ByteBuffer dst,
+		final byte[] alphabet, final boolean pad) {
+		final int start = dst.position();
+		while(src.remaining() >= 3) {
+			final int bits = (src.get() & 0xFF) << 16 |
+				(src.get() & 0xFF) << 8 | (src.get() & 0xFF);
+			dst.put(alphabet[bits >>> 18]);
+			dst.put(alphabet[(bits >>> 12) & 0x3F]);
+			dst.put(alphabet[(bits >>> 6) & 0x3F]);
+			dst.put(alphabet[bits & 0x3F]);
+		}
+		final int remaining = src.remaining();
+		if(remaining > 0) {
+			final int bits = (src.get() & 0xFF) << 16 |
+				((remaining == 2) ? (src.get() & 0xFF) << 8 : 0);
+			dst.put(alphabet[bits >>> 18]);
+			dst.put(alphabet[(bits >>> 12) & 0x3F]);
+			if(remaining == 2) {
+				dst.put(alphabet[(bits >>> 6) & 0x3F]);
+			} else if(pad) {
+				dst.put(PAD);
+			}
+			if(pad) {
+				dst.put(PAD);
+			}
+		}
+		return dst.position() - start;
+	}
+	
+	/**
+	 * Returns the most bytes decoding the given number of characters
+	 * could produce, without looking at them.
+	 */
+	static final int maxDecodedLength(final int length) {
+		return (int)(((long)length * 6) / 8);
+	}
+	
+	/**
+	 * Returns the exact number of bytes decoding the given range of
+	 * characters produces.
+	 */
+	static final int decodedLength(final byte[] src, final int offset,
+		final int length) {
+		long sextets = 0L;
+		for(int i = offset, end = offset + length; i < end; i++) {
+			final byte b = src[i];
+			if(b == PAD) {
+				break;
+			} else if(b >= 0 && DECODE_TABLE[b] >= 0) {
+				sextets++;
+			}
+		}
+		return (int)((sextets * 6) / 8);
+	}
+	
+	/**
+	 * Decodes the given range of characters into the given destination
+	 * at the given offset, returning the number of bytes written.  The
+	 * destination must have room for
+	 * {@link #decodedLength(byte[], int, int)} of them.
+	 */
+	static final int decode(final byte[] src, final int offset,
+		final int length, final byte[] dst, final int dstOffset) {
+		int d = dstOffset, bits = 0, sextets = 0;
+		for(int i = offset, end = offset + length; i < end; i++) {
+			final byte b = src[i];
+			if(b == PAD) {
+				break;
+			}
+			final int value;
+			if(b < 0 || (value = DECODE_TABLE[b]) < 0) {
+				continue;
+			}
+			bits = (bits << 6) | value;
+			if(++sextets == 4) {
+				dst[d++] = (byte)(bits >> 16);
+				dst[d++] = (byte)(bits >> 8);
+				dst[d++] = (byte)bits;
+				bits = 0;
+				sextets = 0;
+			}
+		}
+		return finish(bits, sextets, dst, d) - dstOffset;
+	}
+	
+	/**
+	 * Returns the exact number of bytes decoding the given range of
+	 * chars produces.
+	 */
+	static final int decodedLength(final char[] src, final int offset,
+		final int length) {
+		long sextets = 0L;
+		for(int i = offset, end = offset + length; i < end; i++) {
+			final char c = src[i];
+			if(c == PAD) {
+				break;
+			} else if(c < 128 && DECODE_TABLE[c] >= 0) {
+				sextets++;
+			}
+		}
+		return (int)((sextets * 6) / 8);
+	}
+	
+	/**
+	 * Decodes the given range of chars into the given destination.
+	 * @see #decode(byte[], int, int, byte[], int)
+	 */
+	static final int decode(final char[] src, final int offset,
+		final int length, final byte[] dst, final int dstOffset) {
+		int d = dstOffset, bits = 0, sextets = 0;
+		for(int i = offset, end = offset + length; i < end; i++) {
+			final char c = src[i];
+			if(c == PAD) {
+				break;
+			}
+			final int value;
+			if(c >= 128 || (value = DECODE_TABLE[c]) < 0) {
+				continue;
+			}
+			bits = (bits << 6) | value;
+			if(++sextets == 4) {
+				dst[d++] = (byte)(bits >> 16);
+				dst[d++] = (byte)(bits >> 8);
+				dst[d++] = (byte)bits;
+				bits = 0;
+				sextets = 0;
+			}
+		}
+		return finish(bits, sextets, dst, d) - dstOffset;
+	}
+	
+	/**
+	 * Returns the exact number of bytes decoding the given range of the
+	 * given String produces.
+	 */
+	static final int decodedLength(final String src, final int offset,
+		final int length) {
+		long sextets = 0L;
+		for(int i = offset, end = offset + length; i < end; i++) {
+			final char c = src.charAt(i);
+			if(c == PAD) {
+				break;
+			} else if(c < 128 && DECODE_TABLE[c] >= 0) {
+				sextets++;
+			}
+		}
+		return (int)((sextets * 6) / 8);
+	}
+	
+	/**
+	 * Decodes the given range of the given String straight from its
+	 * chars into the given destination; any char outside of ASCII is
+	 * skipped, just as its UTF-8 bytes would be.
+	 * @see #decode(byte[], int, int, byte[], int)
+	 */
+	static final int decode(final String src, final int offset,
+		final int length, final byte[] dst, final int dstOffset) {
+		int d = dstOffset, bits = 0, sextets = 0;
+		for(int i = offset, end = offset + length; i < end; i++) {
+			final char c = src.charAt(i);
+			if(c == PAD) {
+				break;
+			}
+			final int value;
+			if(c >= 128 || (value = DECODE_TABLE[c]) < 0) {
+				continue;
+			}
+			bits = (bits << 6) | value;
+			if(++sextets == 4) {
+				dst[d++] = (byte)(bits >> 16);
+				dst[d++] = (byte)(bits >> 8);
+				dst[d++] = (byte)bits;
+				bits = 0;
+				sextets = 0;
+			}
+		}
+		return finish(bits, sextets, dst, d) - dstOffset;
+	}
+	
+	/**
+	 * Returns the exact number of bytes decoding the remaining
+	 * characters of the given buffer produces, without advancing it.
+	 */
+	static final int decodedLength(final ByteBuffer src) {
+		long sextets = 0L;
+		for(int i = src.position(), end = src.limit(); i < end; i++) {
+			final byte b = src.get(i);
+			if(b == PAD) {
+				break;
+			} else if(b >= 0 && DECODE_TABLE[b] >= 0) {
+				sextets++;
+			}
+		}
+		return (int)((sextets * 6) / 8);
+	}
+	
+	/**
+	 * Decodes the remaining characters of the given source buffer into
+	 * the given destination buffer, advancing both, for buffers that
+	 * aren't backed by arrays.
+	 * @see #decode(byte[], int, int, byte[], int)
+	 */
+	static final int decode(final ByteBuffer src, final ByteBuffer dst) {
+		final int start = dst.position();
+		int bits = 0, sextets = 0;
+		while(src.hasRemaining()) {
+			final byte b = src.get();
+			if(b == PAD) {
+				break;
+			}
+			final int value;
+			if(b < 0 || (value = DECODE_TABLE[b]) < 0) {
+				continue;
+			}
+			bits = (bits << 6) | value;
+			if(++sextets == 4) {
+				dst.put((byte)(bits >> 16));
+				dst.put((byte)(bits >> 8));
+				dst.put((byte)bits);
+				bits = 0;
+				sextets = 0;
+			}
+		}
+		if(sextets == 2) {
+			dst.put((byte)(bits >> 4));
+		} else if(sextets == 3) {
+			dst.put((byte)(bits >> 10));
+			dst.put((byte)(bits >> 2));
+		}
+		return dst.position() - start;
+	}
+	
+	/**
+	 * Writes the whole bytes left in a trailing partial quantum of the
+	 * given number of sextets, returning the offset just past them.
+	 */
+	static final int finish(final int bits, final int sextets,
+		final byte[] dst, int d) {
+		if(sextets == 2) {
+			dst[d++] = (byte)(bits >> 4);
+		} else if(sextets == 3) {
+			dst[d++] = (byte)(bits >> 10);
+			dst[d++] = (byte)(bits >> 2);
+		}
+		// A lone trailing sextet isn't enough for a whole byte.
+		return d;
+	}
+	
+	private static final byte[] alphabet(final String chars) {
+		final byte[] alphabet = new byte[chars.length()];
+		for(int i = 0; i < alphabet.length; i++) {
+			alphabet[i] = (byte)chars.charAt(i);
+		}
+		return alphabet;
+	}
+	
+}
@@ -26,13 +26,35 @@
 
 package com.kolich.common.util.crypt;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndex;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
 import static org.apache.commons.codec.binary.StringUtils.getBytesUtf8;
 import static org.apache.commons.codec.binary.StringUtils.newStringUtf8;
 
-import org.apache.commons.codec.binary.Base64;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 
+/**
+ * Base-64 encoding and decoding, compatible with commons-codec.  Encoding
+ * goes through shared, thread-safe {@link java.util.Base64} encoders;
+ * decoding goes through a table-driven decoder that is exactly as
+ * lenient as commons-codec's, skipping any non base-64 characters.
+ * 
+ * For hot paths that already have an output buffer, there are variants
+ * that encode and decode into a caller's byte[], char[] or
+ * {@link ByteBuffer} and return the number of bytes or chars written;
+ * use {@link #encodedLength(int)} and friends to size the buffer.
+ */
 public final class Base64Utils {
 	
+	private static final Base64.Encoder ENCODER = Base64.getEncoder();
+	private static final Base64.Encoder URL_SAFE_ENCODER =
+		Base64.getUrlEncoder().withoutPadding();
+	
 	// Cannot be instantiated.
 	private Base64Utils() { }
 	
@@ -43,7 +65,7 @@ public final class Base64Utils {
 	 * @return A UTF-8 String representation of the encoded output.
 	 */
 	public static final String encodeBase64(final String encode) {
-		return newStringUtf8(encodeBase64(getBytesUtf8(encode)));
+		return encodeBase64ToString(getBytesUtf8(encode));
 	}
 	
 	/**
@@ -53,7 +75,7 @@ public final class Base64Utils {
 	 * @return A UTF-8 String representation of the encoded output.
 	 */
 	public static final String encodeBase64ToString(final byte[] encode) {
-		return newStringUtf8(encodeBase64(encode));
+		return encodeToString(encode, Base64Codec.STANDARD_ALPHABET, true);
 	}
 	
 	/**
@@ -63,7 +85,10 @@ public final class Base64Utils {
 	 * @return
 	 */
 	public static final byte[] encodeBase64(final byte[] encode) {
-		return Base64.encodeBase64(encode);
+		if(encode == null || encode.length == 0) {
+			return encode;
+		}
+		return ENCODER.encode(encode);
 	}
 	
 	/**
@@ -74,7 +99,7 @@ public final class Base64Utils {
 	 * @return A UTF-8 String representation of the encoded output.
 	 */
 	public static final String encodeBase64URLSafe(final String encode) {
-		return newStringUtf8(encodeBase64URLSafe(getBytesUtf8(encode)));
+		return encodeBase64URLSafeToString(getBytesUtf8(encode));
 	}
 	
 	/**
@@ -85,7 +110,7 @@ public final class Base64Utils {
 	 * @return A UTF-8 String representation of the encoded output.
 	 */
 	public static final String encodeBase64URLSafeToString(final byte[] encode) {
-		return newStringUtf8(encodeBase64URLSafe(encode));
+		return encodeToString(encode, Base64Codec.URL_SAFE_ALPHABET, false);
 	}
 	
 	/**
@@ -96,7 +121,10 @@ public final class Base64Utils {
 	 * @return
 	 */
 	public static final byte[] encodeBase64URLSafe(final byte[] encode) {
-		return Base64.encodeBase64URLSafe(encode);
+		if(encode == null || encode.length == 0) {
+			return encode;
+		}
+		return URL_SAFE_ENCODER.encode(encode);
 	}
 	
 	/**
@@ -106,7 +134,24 @@ public final class Base64Utils {
 	 * @return A UTF-8 String representation of the decoded output.
 	 */
 	public static final String decodeBase64(final String decode) {
-		return newStringUtf8(decodeBase64(getBytesUtf8(decode)));
+		return newStringUtf8(decodeBase64ToBytes(decode));
+	}
+	
+	/**
+	 * Decodes a base-64 String, standard or URL-safe, straight from its
+	 * characters, without converting it to bytes first.
+	 * @param decode
+	 * @return The decoded bytes.
+	 */
+	public static final byte[] decodeBase64ToBytes(final String decode) {
+		if(decode == null) {
+			return null;
+		}
+		final int length = decode.length();
+		final byte[] decoded = new byte[Base64Codec.decodedLength(decode, 0,
+			length)];
+		Base64Codec.decode(decode, 0, length, decoded, 0);
+		return decoded;
 	}
 	
 	/**
@@ -126,7 +171,282 @@ public final class Base64Utils {
 	 * @return
 	 */
 	public static final byte[] decodeBase64(final byte[] decode) {
-		return Base64.decodeBase64(decode);
+		if(decode == null || decode.length == 0) {
+			return decode;
+		}
+		final byte[] decoded = new byte[Base64Codec.decodedLength(decode, 0,
+			decode.length)];
+		Base64Codec.decode(decode, 0, decode.length, decoded, 0);
+		return decoded;
+	}
+	
+	/**
+	 * Strictly decodes a base-64 String, standard or URL-safe, padded or
+	 * not, with the fast {@link StrictBase64Decoder}.  Unlike
+	 * {@link #decodeBase64(String)}, throws a
+	 * {@link StrictBase64Decoder.Base64DecodingException} for any
+	 * invalid input instead of skipping over it.
+	 * @param decode
+	 * @return
+	 */
+	public static final byte[] decodeBase64Strict(final String decode) {
+		return StrictBase64Decoder.decode(decode);
+	}
+	
+	/**
+	 * Strictly decodes binary data using the base64 algorithm, standard
+	 * or URL-safe, padded or not, with the fast
+	 * {@link StrictBase64Decoder}.  Unlike {@link #decodeBase64(byte[])},
+	 * throws a {@link StrictBase64Decoder.Base64DecodingException} for
+	 * any invalid input instead of skipping over it.
+	 * @param decode
+	 * @return
+	 */
+	public static final byte[] decodeBase64Strict(final byte[] decode) {
+		return StrictBase64Decoder.decode(decode);
+	}
+	
+	/**
+	 * Returns the exact length of the standard, padded, base-64 encoding
+	 * of the given number of bytes.
+	 */
+	public static final int encodedLength(final int length) {
+		return Base64Codec.encodedLength(length, true);
+	}
+	
+	/**
+	 * Returns the exact length of the URL-safe, unpadded, base-64
+	 * encoding of the given number of bytes.
+	 */
+	public static final int encodedLengthURLSafe(final int length) {
+		return Base64Codec.encodedLength(length, false);
+	}
+	
+	/**
+	 * Returns the exact number of bytes decoding the given range of
+	 * base-64 characters produces.
+	 */
+	public static final int decodedLength(final byte[] decode,
+		final int offset, final int length) {
+		checkPositionIndexes(offset, offset + length, decode.length);
+		return Base64Codec.decodedLength(decode, offset, length);
+	}
+	
+	/**
+	 * Returns the exact number of bytes decoding the given range of
+	 * base-64 chars produces.
+	 */
+	public static final int decodedLength(final char[] decode,
+		final int offset, final int length) {
+		checkPositionIndexes(offset, offset + length, decode.length);
+		return Base64Codec.decodedLength(decode, offset, length);
+	}
+	
+	/**
+	 * Returns the exact number of bytes decoding the remaining base-64
+	 * characters in the given buffer produces.
+	 */
+	public static final int decodedLength(final ByteBuffer decode) {
+		return Base64Codec.decodedLength(decode);
+	}
+	
+	/**
+	 * Encodes the given range of bytes using the base64 algorithm into
+	 * the given destination at the given offset, returning the number
+	 * of bytes written, exactly {@link #encodedLength(int)}.
+	 */
+	public static final int encodeBase64(final byte[] encode,
+		final int offset, final int length, final byte[] dst,
+		final int dstOffset) {
+		return encode(encode, offset, length, dst, dstOffset,
+			Base64Codec.STANDARD_ALPHABET, true);
+	}
+	
+	/**
+	 * Encodes the given range of bytes using the base64 algorithm into
+	 * the given destination at the given offset, returning the number
+	 * of chars written, exactly {@link #encodedLength(int)}.
+	 */
+	public static final int encodeBase64(final byte[] encode,
+		final int offset, final int length, final char[] dst,
+		final int dstOffset) {
+		return encode(encode, offset, length, dst, dstOffset,
+			Base64Codec.STANDARD_ALPHABET, true);
+	}
+	
+	/**
+	 * Encodes the remaining bytes of the given buffer using the base64
+	 * algorithm into the given destination buffer, advancing both, and
+	 * returns the number of bytes written, exactly
+	 * {@link #encodedLength(int)}.
+	 * @throws BufferOverflowException if the destination doesn't have
+	 * room for them, in which case neither buffer is advanced
+	 */
+	public static final int encodeBase64(final ByteBuffer encode,
+		final ByteBuffer dst) {
+		return encode(encode, dst, Base64Codec.STANDARD_ALPHABET, true);
+	}
+	
+	/**
+	 * Encodes the given range of bytes using the URL-safe variation of
+	 * the base64 algorithm into the given destination at the given
+	 * offset, returning the number of bytes written, exactly
+	 * {@link #encodedLengthURLSafe(int)}.
+	 */
+	public static final int encodeBase64URLSafe(final byte[] encode,
+		final int offset, final int length, final byte[] dst,
+		final int dstOffset) {
+		return encode(encode, offset, length, dst, dstOffset,
+			Base64Codec.URL_SAFE_ALPHABET, false);
+	}
+	
+	/**
+	 * Encodes the given range of bytes using the URL-safe variation of
+	 * the base64 algorithm into the given destination at the given
+	 * offset, returning the number of chars written, exactly
+	 * {@link #encodedLengthURLSafe(int)}.
+	 */
+	public static final int encodeBase64URLSafe(final byte[] encode,
+		final int offset, final int length, final char[] dst,
+		final int dstOffset) {
+		return encode(encode, offset, length, dst, dstOffset,
+			Base64Codec.URL_SAFE_ALPHABET, false);
+	}
+	
+	/**
+	 * Encodes the remaining bytes of the given buffer using the URL-safe
+	 * variation of the base64 algorithm into the given destination
+	 * buffer, advancing both, and returns the number of bytes written,
+	 * exactly {@link #encodedLengthURLSafe(int)}.
+	 * @throws BufferOverflowException if the destination doesn't have
+	 * room for them, in which case neither buffer is advanced
+	 */
+	public static final int encodeBase64URLSafe(final ByteBuffer encode,
+		final ByteBuffer dst) {
+		return encode(encode, dst, Base64Codec.URL_SAFE_ALPHABET, false);
+	}
+	
+	/**
+	 * Decodes the given range of base-64 characters, standard or URL-safe,
+	 * into the given destination at the given offset, returning the
+	 * number of bytes written, exactly
+	 * {@link #decodedLength(byte[], int, int)}.
+	 */
+	public static final int decodeBase64(final byte[] decode,
+		final int offset, final int length, final byte[] dst,
+		final int dstOffset) {
+		checkPositionIndexes(offset, offset + length, decode.length);
+		checkPositionIndex(dstOffset, dst.length);
+		if(dst.length - dstOffset < Base64Codec.maxDecodedLength(length)) {
+			checkPositionIndexes(dstOffset, dstOffset +
+				Base64Codec.decodedLength(decode, offset, length), dst.length);
+		}
+		return Base64Codec.decode(decode, offset, length, dst, dstOffset);
+	}
+	
+	/**
+	 * Decodes the given range of base-64 chars, standard or URL-safe,
+	 * into the given destination at the given offset, returning the
+	 * number of bytes written, exactly
+	 * {@link #decodedLength(char[], int, int)}.
+	 */
+	public static final int decodeBase64(final char[] decode,
+		final int offset, final int length, final byte[] dst,
+		final int dstOffset) {
+		checkPositionIndexes(offset, offset + length, decode.length);
+		checkPositionIndex(dstOffset, dst.length);
+		if(dst.length - dstOffset < Base64Codec.maxDecodedLength(length)) {
+			checkPositionIndexes(dstOffset, dstOffset +
+				Base64Codec.decodedLength(decode, offset, length), dst.length);
+		}
+		return Base64Codec.decode(decode, offset, length, dst, dstOffset);
+	}
+	
+	/**
+	 * Decodes the remaining base-64 characters, standard or URL-safe, of
+	 * the given buffer into the given destination buffer, consuming all
+	 * of the source and advancing the destination, and returns the
+	 * number of bytes written, exactly {@link #decodedLength(ByteBuffer)}.
+	 * @throws BufferOverflowException if the destination doesn't have
+	 * room for them, in which case neither buffer is advanced
+	 */
+	public static final int decodeBase64(final ByteBuffer decode,
+		final ByteBuffer dst) {
+		checkNotNull(decode, "Buffer to decode cannot be null.");
+		final int length = decode.remaining();
+		if(dst.remaining() < Base64Codec.maxDecodedLength(length) &&
+			dst.remaining() < Base64Codec.decodedLength(decode)) {
+			throw new BufferOverflowException();
+		}
+		final int written;
+		if(decode.hasArray() && dst.hasArray()) {
+			written = Base64Codec.decode(decode.array(),
+				decode.arrayOffset() + decode.position(), length,
+				dst.array(), dst.arrayOffset() + dst.position());
+			((Buffer)dst).position(dst.position() + written);
+		} else {
+			written = Base64Codec.decode(decode, dst);
+		}
+		((Buffer)decode).position(decode.limit());
+		return written;
+	}
+	
+	private static final int encode(final byte[] encode, final int offset,
+		final int length, final byte[] dst, final int dstOffset,
+		final byte[] alphabet, final boolean pad) {
+		checkPositionIndexes(offset, offset + length, encode.length);
+		checkPositionIndexes(dstOffset, dstOffset +
+			Base64Codec.encodedLength(length, pad), dst.length);
+		return Base64Codec.encode(encode, offset, length, dst, dstOffset,
+			alphabet, pad);
+	}
+	
+	private static final int encode(final byte[] encode, final int offset,
+		final int length, final char[] dst, final int dstOffset,
+		final byte[] alphabet, final boolean pad) {
+		checkPositionIndexes(offset, offset + length, encode.length);
+		checkPositionIndexes(dstOffset, dstOffset +
+			Base64Codec.encodedLength(length, pad), dst.length);
+		return Base64Codec.encode(encode, offset, length, dst, dstOffset,
+			alphabet, pad);
+	}
+	
+	private static final int encode(final ByteBuffer encode,
+		final ByteBuffer dst, final byte[] alphabet, final boolean pad) {
+		checkNotNull(encode, "Buffer to encode cannot be null.");
+		final int length = encode.remaining();
+		if(dst.remaining() < Base64Codec.encodedLength(length, pad)) {
+			throw new BufferOverflowException();
+		}
+		if(encode.hasArray() && dst.hasArray()) {
+			final int written = Base64Codec.encode(encode.array(),
+				encode.arrayOffset() + encode.position(), length,
+				dst.array(), dst.arrayOffset() + dst.position(), alphabet,
+				pad);
+			((Buffer)encode).position(encode.limit());
+			((Buffer)dst).position(dst.position() + written);
+			return written;
+		}
+		return Base64Codec.encode(encode, dst, alphabet, pad);
+	}
+	
+	/**
+	 * Encodes the given bytes straight into a String; the encoded output
+	 * is always ASCII, so there's no need to run it through a charset
+	 * decoder.
+	 */
+	private static final String encodeToString(final byte[] encode,
+		final byte[] alphabet, final boolean pad) {
+		if(encode == null) {
+			return null;
+		}
+		final byte[] encoded = new byte[Base64Codec.encodedLength(
+			encode.length, pad)];
+		Base64Codec.encode(encode, 0, encode.length, encoded, 0, alphabet,
+			pad);
+		// ISO-8859-1 maps each byte straight to the same char, which is
+		// exactly right for ASCII.
+		return new String(encoded, StandardCharsets.ISO_8859_1);
 	}
 	
 }
@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.common.util.crypt;
+
+/**
+ * The binary-to-text encodings available as streams and channels, each
+ * compatible with its counterpart in {@link Base64Utils} or
+ * {@link Base32Utils}.
+ * @see EncodingOutputStream
+ * @see DecodingOutputStream
+ * @see EncodingInputStream
+ * @see DecodingInputStream
+ */
+public enum BinaryEncoding {
+	
+	/**
+	 * Standard base-64, padded, as {@link Base64Utils#encodeBase64(byte[])}.
+	 */
+	BASE64(6, 3, Base64Codec.DECODE_TABLE) {
+		@Override
+		int encodedLength(final int length) {
+			return Base64Codec.encodedLength(length, true);
+		}
+		@Override
+		int encode(final byte[] src, final int offset, final int length,
+			final byte[] dst, final int dstOffset) {
+			return Base64Codec.encode(src, offset, length, dst, dstOffset,
+				Base64Codec.STANDARD_ALPHABET, true);
+		}
+	},
+	
+	/**
+	 * URL-safe base-64, unpadded, as
+	 * {@link Base64Utils#encodeBase64URLSafe(byte[])}.
+	 */
+	BASE64_URL_SAFE(6, 3, Base64Codec.DECODE_TABLE) {
+		@Override
+		int encodedLength(final int length) {
+			return Base64Codec.encodedLength(length, false);
+		}
+		@Override
+		int encode(final byte[] src, final int offset, final int length,
+			final byte[] dst, final int dstOffset) {
+			return Base64Codec.encode(src, offset, length, dst, dstOffset,
+				Base64Codec.URL_SAFE_ALPHABET, false);
+		}
+	},
+	
+	/**
+	 * Extended hex base-32, padded, as
+	 * {@link Base32Utils#encodeBase32(byte[])}.
+	 */
+	BASE32(5, 5, Base32Codec.DECODE_TABLE) {
+		@Override
+		int encodedLength(final int length) {
+			return Base32Codec.encodedLength(length);
+		}
+		@Override
+		int encode(final byte[] src, final int offset, final int length,
+			final byte[] dst, final int dstOffset) {
+			return Base32Codec.encode(src, offset, length, dst, dstOffset);
+		}
+	};
+	
+	/**
+	 * The pad character, which also ends decoding.
+	 */
+	static final byte PAD = '=';
+	
+	/**
+	 * Bits per encoded character.
+	 */
+	final int bitsPerChar_;
+	
+	/**
+	 * Bytes per whole quantum of input; anything less is only encoded,
+	 * and padded, at the end.
+	 */
+	final int bytesPerQuantum_;
+	
+	/**
+	 * Characters per whole quantum of encoded output.
+	 */
+	final int charsPerQuantum_;
+	
+	/**
+	 * Maps an ASCII character to its value, or to -1 if it's skipped.
+	 */
+	final byte[] decodeTable_;
+	
+	private BinaryEncoding(final int bitsPerChar, final int bytesPerQuantum,
+		final byte[] decodeTable) {
+		bitsPerChar_ = bitsPerChar;
+		bytesPerQuantum_ = bytesPerQuantum;
+		charsPerQuantum_ = bytesPerQuantum * 8 / bitsPerChar;
+		decodeTable_ = decodeTable;
+	}
+	
+	/**
+	 * Returns the exact number of characters encoding the given number
+	 * of bytes produces.
+	 */
+	abstract int encodedLength(final int length);
+	
+	/**
+	 * Encodes the given range of bytes into the given destination at the
+	 * given offset, returning the number of characters written.
+	 */
+	abstract int encode(final byte[] src, final int offset, final int length,
+		final byte[] dst, final int dstOffset);
+	
+}
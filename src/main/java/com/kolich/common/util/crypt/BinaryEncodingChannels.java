@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.common.util.crypt;
+
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Channel flavors of the {@link BinaryEncoding} streams, for encoding or
+ * decoding straight to or from a file, socket or any other channel with
+ * a fixed-size buffer.  Closing a returned channel closes the channel it
+ * wraps, and is required to flush the final partial quantum of a
+ * writable one.
+ */
+public final class BinaryEncodingChannels {
+	
+	// Cannot be instantiated.
+	private BinaryEncodingChannels() { }
+	
+	/**
+	 * Returns a channel that encodes the bytes written to it, writing
+	 * the encoded characters to the given channel.
+	 */
+	public static final WritableByteChannel encodeTo(
+		final WritableByteChannel channel, final BinaryEncoding encoding) {
+		return Channels.newChannel(new EncodingOutputStream(
+			Channels.newOutputStream(channel), encoding));
+	}
+	
+	/**
+	 * Returns a channel that decodes the characters written to it,
+	 * writing the decoded bytes to the given channel.
+	 */
+	public static final WritableByteChannel decodeTo(
+		final WritableByteChannel channel, final BinaryEncoding encoding) {
+		return Channels.newChannel(new DecodingOutputStream(
+			Channels.newOutputStream(channel), encoding));
+	}
+	
+	/**
+	 * Returns a channel that reads the bytes of the given channel,
+	 * encoded.
+	 */
+	public static final ReadableByteChannel encodeFrom(
+		final ReadableByteChannel channel, final BinaryEncoding encoding) {
+		return Channels.newChannel(new EncodingInputStream(
+			Channels.newInputStream(channel), encoding));
+	}
+	
+	/**
+	 * Returns a channel that reads the characters of the given channel,
+	 * decoded.
+	 */
+	public static final ReadableByteChannel decodeFrom(
+		final ReadableByteChannel channel, final BinaryEncoding encoding) {
+		return Channels.newChannel(new DecodingInputStream(
+			Channels.newInputStream(channel), encoding));
+	}
+	
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.common.util.crypt;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.kolich.common.util.crypt.EncodingOutputStream.DEFAULT_BUFFER_SIZE;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Decodes the characters written to it with a {@link BinaryEncoding},
+ * writing the decoded bytes to an underlying stream through a fixed-size
+ * buffer, so memory use doesn't grow with the size of the payload.
+ * Decoding is as lenient as the whole-array decoders, and anything
+ * written after a pad character is ignored.  The bytes in a final
+ * partial quantum are only written on {@link #close()}.  Not
+ * thread-safe.
+ */
+public final class DecodingOutputStream extends OutputStream {
+	
+	private final OutputStream out_;
+	private final StreamCodec codec_;
+	
+	/**
+	 * Characters decoded per trip to the underlying stream.
+	 */
+	private final int chunk_;
+	private final byte[] buffer_;
+	private final byte[] single_;
+	
+	private boolean closed_;
+	
+	public DecodingOutputStream(final OutputStream out,
+		final BinaryEncoding encoding, final int bufferSize) {
+		checkNotNull(out, "Output stream cannot be null.");
+		checkNotNull(encoding, "Binary encoding cannot be null.");
+		checkArgument(bufferSize > 0, "Buffer size must be positive: " +
+			bufferSize);
+		out_ = out;
+		codec_ = new StreamCodec(encoding);
+		chunk_ = bufferSize;
+		buffer_ = new byte[codec_.maxDecodedLength(bufferSize +
+			encoding.charsPerQuantum_)];
+		single_ = new byte[1];
+		closed_ = false;
+	}
+	
+	public DecodingOutputStream(final OutputStream out,
+		final BinaryEncoding encoding) {
+		this(out, encoding, DEFAULT_BUFFER_SIZE);
+	}
+	
+	@Override
+	public void write(final int b) throws IOException {
+		single_[0] = (byte)b;
+		write(single_, 0, 1);
+	}
+	
+	@Override
+	public void write(final byte[] b, int off, int len) throws IOException {
+		checkNotNull(b, "Characters to write cannot be null.");
+		if(off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+		ensureOpen();
+		while(len > 0 && !codec_.isEof()) {
+			final int n = Math.min(len, chunk_);
+			final int decoded = codec_.decode(b, off, n, buffer_, 0);
+			out_.write(buffer_, 0, decoded);
+			off += n;
+			len -= n;
+		}
+	}
+	
+	/**
+	 * Flushes the underlying stream; the bytes in a partial quantum
+	 * aren't known until the stream is closed, so they are still held
+	 * back.
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		out_.flush();
+	}
+	
+	/**
+	 * Decodes the final partial quantum, if any, and closes the
+	 * underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(closed_) {
+			return;
+		}
+		closed_ = true;
+		try {
+			out_.write(buffer_, 0, codec_.finishDecode(buffer_, 0));
+			out_.flush();
+		} finally {
+			out_.close();
+		}
+	}
+	
+	private void ensureOpen() throws IOException {
+		if(closed_) {
+			throw new IOException("Stream closed.");
+		}
+	}
+	
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.common.util.crypt;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.kolich.common.util.crypt.EncodingOutputStream.DEFAULT_BUFFER_SIZE;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the bytes of an underlying stream encoded with a
+ * {@link BinaryEncoding}, a fixed-size buffer at a time, so memory use
+ * doesn't grow with the size of the payload.  Not thread-safe.
+ */
+public final class EncodingInputStream extends InputStream {
+	
+	private final InputStream in_;
+	private final StreamCodec codec_;
+	
+	private final byte[] input_;
+	private final byte[] buffer_;
+	private int position_;
+	private int limit_;
+	
+	/**
+	 * Set once the underlying stream is exhausted and the final partial
+	 * quantum has been encoded.
+	 */
+	private boolean done_;
+	
+	public EncodingInputStream(final InputStream in,
+		final BinaryEncoding encoding, final int bufferSize) {
+		checkNotNull(in, "Input stream cannot be null.");
+		checkNotNull(encoding, "Binary encoding cannot be null.");
+		checkArgument(bufferSize > 0, "Buffer size must be positive: " +
+			bufferSize);
+		in_ = in;
+		codec_ = new StreamCodec(encoding);
+		input_ = new byte[bufferSize];
+		buffer_ = new byte[encoding.encodedLength(bufferSize +
+			encoding.bytesPerQuantum_)];
+		position_ = limit_ = 0;
+		done_ = false;
+	}
+	
+	public EncodingInputStream(final InputStream in,
+		final BinaryEncoding encoding) {
+		this(in, encoding, DEFAULT_BUFFER_SIZE);
+	}
+	
+	@Override
+	public int read() throws IOException {
+		return fill() ? (buffer_[position_++] & 0xFF) : -1;
+	}
+	
+	@Override
+	public int read(final byte[] b, final int off, final int len)
+		throws IOException {
+		checkNotNull(b, "Read buffer cannot be null.");
+		if(off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		} else if(len == 0) {
+			return 0;
+		} else if(!fill()) {
+			return -1;
+		}
+		final int n = Math.min(len, limit_ - position_);
+		System.arraycopy(buffer_, position_, b, off, n);
+		position_ += n;
+		return n;
+	}
+	
+	@Override
+	public long skip(final long n) throws IOException {
+		long skipped = 0L;
+		while(skipped < n && fill()) {
+			final int s = (int)Math.min(n - skipped, limit_ - position_);
+			position_ += s;
+			skipped += s;
+		}
+		return skipped;
+	}
+	
+	@Override
+	public int available() throws IOException {
+		return limit_ - position_;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		in_.close();
+	}
+	
+	/**
+	 * Makes sure there are encoded characters to read, returning false
+	 * only once every last one has been read.
+	 */
+	private boolean fill() throws IOException {
+		while(position_ == limit_) {
+			if(done_) {
+				return false;
+			}
+			final int n = in_.read(input_, 0, input_.length);
+			position_ = 0;
+			if(n < 0) {
+				limit_ = codec_.finishEncode(buffer_, 0);
+				done_ = true;
+			} else {
+				limit_ = codec_.encode(input_, 0, n, buffer_, 0);
+			}
+		}
+		return true;
+	}
+	
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.common.util.crypt;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes the bytes written to it with a {@link BinaryEncoding}, writing
+ * the encoded characters to an underlying stream through a fixed-size
+ * buffer, so memory use doesn't grow with the size of the payload.  The
+ * final partial quantum, padding and all, is only written on
+ * {@link #close()}.  Not thread-safe.
+ */
+public final class EncodingOutputStream extends OutputStream {
+	
+	static final int DEFAULT_BUFFER_SIZE = 8192;
+	
+	private final OutputStream out_;
+	private final StreamCodec codec_;
+	
+	/**
+	 * Input bytes encoded per trip to the underlying stream.
+	 */
+	private final int chunk_;
+	private final byte[] buffer_;
+	private final byte[] single_;
+	
+	private boolean closed_;
+	
+	public EncodingOutputStream(final OutputStream out,
+		final BinaryEncoding encoding, final int bufferSize) {
+		checkNotNull(out, "Output stream cannot be null.");
+		checkNotNull(encoding, "Binary encoding cannot be null.");
+		checkArgument(bufferSize > 0, "Buffer size must be positive: " +
+			bufferSize);
+		out_ = out;
+		codec_ = new StreamCodec(encoding);
+		chunk_ = bufferSize;
+		buffer_ = new byte[encoding.encodedLength(bufferSize +
+			encoding.bytesPerQuantum_)];
+		single_ = new byte[1];
+		closed_ = false;
+	}
+	
+	public EncodingOutputStream(final OutputStream out,
+		final BinaryEncoding encoding) {
+		this(out, encoding, DEFAULT_BUFFER_SIZE);
+	}
+	
+	@Override
+	public void write(final int b) throws IOException {
+		single_[0] = (byte)b;
+		write(single_, 0, 1);
+	}
+	
+	@Override
+	public void write(final byte[] b, int off, int len) throws IOException {
+		checkNotNull(b, "Bytes to write cannot be null.");
+		if(off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+		ensureOpen();
+		while(len > 0) {
+			final int n = Math.min(len, chunk_);
+			final int encoded = codec_.encode(b, off, n, buffer_, 0);
+			out_.write(buffer_, 0, encoded);
+			off += n;
+			len -= n;
+		}
+	}
+	
+	/**
+	 * Flushes the underlying stream; a partial quantum can't be encoded
+	 * until the stream is closed, so it is still held back.
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		out_.flush();
+	}
+	
+	/**
+	 * Encodes the final partial quantum, if any, and closes the
+	 * underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(closed_) {
+			return;
+		}
+		closed_ = true;
+		try {
+			out_.write(buffer_, 0, codec_.finishEncode(buffer_, 0));
+			out_.flush();
+		} finally {
+			out_.close();
+		}
+	}
+	
+	private void ensureOpen() throws IOException {
+		if(closed_) {
+			throw new IOException("Stream closed.");
+		}
+	}
+	
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.common.util.crypt;
+
+import static com.kolich.common.util.crypt.BinaryEncoding.PAD;
+
+/**
+ * Incrementally encodes or decodes a {@link BinaryEncoding}, a chunk at
+ * a time, holding on to nothing more than one partial quantum between
+ * chunks.  Decoding is exactly as lenient as the whole-array decoders.
+ * Not thread-safe.
+ */
+final class StreamCodec {
+	
+	private final BinaryEncoding encoding_;
+	
+	/**
+	 * Input bytes left over from the last chunk, short of a whole
+	 * quantum, waiting to be encoded.
+	 */
+	private final byte[] pending_;
+	private int pendingLength_;
+	
+	/**
+	 * Decoded bits, and the number of characters they came from, short
+	 * of a whole quantum.
+	 */
+	private long bits_;
+	private int chars_;
+	
+	/**
+	 * Set once decoding has seen a pad character.
+	 */
+	private boolean eof_;
+	
+	StreamCodec(final BinaryEncoding encoding) {
+		encoding_ = encoding;
+		pending_ = new byte[encoding.bytesPerQuantum_];
+		pendingLength_ = 0;
+		bits_ = 0L;
+		chars_ = 0;
+		eof_ = false;
+	}
+	
+	/**
+	 * Returns the most characters encoding the given number of bytes
+	 * could write, pending bytes included.
+	 */
+	int maxEncodedLength(final int length) {
+		return encoding_.encodedLength(pendingLength_ + length);
+	}
+	
+	/**
+	 * Encodes as many whole quanta of the pending bytes followed by the
+	 * given bytes as there are, keeping the rest pending, and returns the
+	 * number of characters written to the given destination.
+	 */
+	int encode(final byte[] src, int offset, int length, final byte[] dst,
+		final int dstOffset) {
+		final int quantum = pending_.length;
+		int d = dstOffset;
+		if(pendingLength_ > 0) {
+			final int n = Math.min(quantum - pendingLength_, length);
+			System.arraycopy(src, offset, pending_, pendingLength_, n);
+			pendingLength_ += n;
+			offset += n;
+			length -= n;
+			if(pendingLength_ < quantum) {
+				return 0;
+			}
+			d += encoding_.encode(pending_, 0, quantum, dst, d);
+			pendingLength_ = 0;
+		}
+		final int whole = length - (length % quantum);
+		d += encoding_.encode(src, offset, whole, dst, d);
+		pendingLength_ = length - whole;
+		System.arraycopy(src, offset + whole, pending_, 0, pendingLength_);
+		return d - dstOffset;
+	}
+	
+	/**
+	 * Encodes, with padding if any, whatever bytes are still pending,
+	 * returning the number of characters written.
+	 */
+	int finishEncode(final byte[] dst, final int dstOffset) {
+		final int n = encoding_.encode(pending_, 0, pendingLength_, dst,
+			dstOffset);
+		pendingLength_ = 0;
+		return n;
+	}
+	
+	/**
+	 * Returns the most bytes decoding the given number of characters
+	 * could write, the partial quantum so far included.
+	 */
+	int maxDecodedLength(final int length) {
+		return (int)(((long)chars_ + length) * encoding_.bitsPerChar_ / 8);
+	}
+	
+	/**
+	 * Decodes the given characters, up to a pad character if any, and
+	 * returns the number of bytes written to the given destination.
+	 */
+	int decode(final byte[] src, final int offset, final int length,
+		final byte[] dst, final int dstOffset) {
+		final byte[] table = encoding_.decodeTable_;
+		final int shift = encoding_.bitsPerChar_;
+		final int quantum = encoding_.charsPerQuantum_;
+		final int bytes = encoding_.bytesPerQuantum_;
+		int d = dstOffset;
+		for(int i = offset, end = offset + length; i < end && !eof_; i++) {
+			final byte b = src[i];
+			if(b == PAD) {
+				eof_ = true;
+				break;
+			}
+			final int value;
+			if(b < 0 || (value = table[b]) < 0) {
+				continue;
+			}
+			bits_ = (bits_ << shift) + value;
+			if(++chars_ == quantum) {
+				d = put(bits_, bytes, dst, d);
+				bits_ = 0L;
+				chars_ = 0;
+			}
+		}
+		return d - dstOffset;
+	}
+	
+	/**
+	 * Writes the whole bytes left in the partial quantum, if any,
+	 * returning the number of bytes written.
+	 */
+	int finishDecode(final byte[] dst, final int dstOffset) {
+		final int bits = chars_ * encoding_.bitsPerChar_;
+		final int d = put(bits_ >>> (bits % 8), bits / 8, dst, dstOffset);
+		bits_ = 0L;
+		chars_ = 0;
+		return d - dstOffset;
+	}
+	
+	/**
+	 * Returns true once decoding has seen a pad character; anything
+	 * after it is ignored.
+	 */
+	boolean isEof() {
+		return eof_;
+	}
+	
+	private static final int put(final long bits, final int bytes,
+		final byte[] dst, int d) {
+		for(int i = bytes - 1; i >= 0; i--) {
+			dst[d++] = (byte)(bits >>> (i * 8));
+		}
+		return d;
+	}
+	
+}
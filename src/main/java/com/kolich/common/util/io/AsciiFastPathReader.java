@@ -0,0 +1,235 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.common.util.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A Reader for US-ASCII, ISO-8859-1 and UTF-8 input that copies runs of
+ * plain ASCII bytes straight into the caller's char[] array.  Only runs
+ * of non-ASCII bytes are handed to a real {@link CharsetDecoder}; for
+ * ISO-8859-1 every byte maps directly to a char and no decoder is used
+ * at all.  Produces exactly what an {@link java.io.InputStreamReader}
+ * would for the same input, including replacement of malformed input.
+ */
+final class AsciiFastPathReader extends Reader {
+	
+	private static final int DEFAULT_BUFFER_SIZE = 8192;
+	
+	private final InputStream in_;
+	
+	/**
+	 * True for ISO-8859-1, where every byte is its own char.
+	 */
+	private final boolean latin1_;
+	
+	/**
+	 * Decodes runs of non-ASCII bytes; null for ISO-8859-1.
+	 */
+	private final CharsetDecoder decoder_;
+	
+	private final byte[] bytes_;
+	private int position_;
+	private int limit_;
+	private boolean eof_;
+	
+	/**
+	 * Chars decoded from a non-ASCII run that did not fit into the
+	 * caller's buffer.
+	 */
+	private final CharBuffer pending_;
+	
+	AsciiFastPathReader(final InputStream in, final Charset charset) {
+		if(!isFastPath(charset)) {
+			throw new IllegalArgumentException("No fast path for charset: " +
+				charset.name());
+		}
+		in_ = in;
+		latin1_ = StandardCharsets.ISO_8859_1.equals(charset);
+		decoder_ = latin1_ ? null : charset.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		bytes_ = new byte[DEFAULT_BUFFER_SIZE];
+		// Every byte in a run decodes to at most one char for the
+		// charsets we support (a 4-byte UTF-8 sequence is 2 chars).
+		pending_ = CharBuffer.allocate(DEFAULT_BUFFER_SIZE);
+		((Buffer)pending_).flip();
+	}
+	
+	/**
+	 * Returns true if the given charset has an ASCII fast path.
+	 */
+	static final boolean isFastPath(final Charset charset) {
+		return StandardCharsets.UTF_8.equals(charset) ||
+			StandardCharsets.US_ASCII.equals(charset) ||
+			StandardCharsets.ISO_8859_1.equals(charset);
+	}
+	
+	/**
+	 * Decodes the given bytes into a String, skipping the charset
+	 * decoder entirely when the bytes are all ASCII (or the charset
+	 * is ISO-8859-1).
+	 */
+	static final String decode(final byte[] bytes, final int offset,
+		final int length, final Charset charset) {
+		if(StandardCharsets.ISO_8859_1.equals(charset) ||
+			(isFastPath(charset) && isAscii(bytes, offset, length))) {
+			// ISO-8859-1 maps every byte straight to a char, which is
+			// also exactly right for ASCII.
+			return new String(bytes, offset, length,
+				StandardCharsets.ISO_8859_1);
+		}
+		return new String(bytes, offset, length, charset);
+	}
+	
+	private static final boolean isAscii(final byte[] bytes, final int offset,
+		final int length) {
+		for(int i = offset, end = offset + length; i < end; i++) {
+			if(bytes[i] < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public int read(final char[] cbuf, final int off, final int len)
+		throws IOException {
+		if(len == 0) {
+			return 0;
+		}
+		int n = drainPending(cbuf, off, len);
+		while(n < len) {
+			if(position_ == limit_) {
+				// Don't block for more input if we already have
+				// something to hand back.
+				if((n > 0) || !fill()) {
+					break;
+				}
+			}
+			if(latin1_ || (bytes_[position_] >= 0)) {
+				int p = position_;
+				final int max = Math.min(limit_, p + (len - n));
+				while((p < max) && (latin1_ || (bytes_[p] >= 0))) {
+					cbuf[off + n++] = (char)(bytes_[p++] & 0xFF);
+				}
+				position_ = p;
+			} else {
+				final int before = position_;
+				decodeRun();
+				final int drained = drainPending(cbuf, off + n, len - n);
+				n += drained;
+				if((position_ == before) && (drained == 0)) {
+					// An incomplete multi-byte sequence at the end of the
+					// buffer; we need more input to finish it.
+					// At the end of the stream, fill() fails and the next
+					// pass decodes the leftover bytes as malformed input.
+					if(n > 0) {
+						break;
+					}
+					fill();
+				}
+			}
+		}
+		return (n == 0) ? -1 : n;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		in_.close();
+	}
+	
+	/**
+	 * Decodes the run of non-ASCII bytes starting at the current
+	 * position into the pending buffer.
+	 */
+	private void decodeRun() {
+		int end = position_;
+		while((end < limit_) && (bytes_[end] < 0)) {
+			end++;
+		}
+		// If the run is followed by an ASCII byte, or there's no more
+		// input, then any incomplete sequence at the end is malformed.
+		final boolean endOfInput = (end < limit_) || eof_;
+		final ByteBuffer in = ByteBuffer.wrap(bytes_, position_,
+			end - position_);
+		((Buffer)pending_).clear();
+		decoder_.decode(in, pending_, endOfInput);
+		if(endOfInput) {
+			decoder_.flush(pending_);
+			decoder_.reset();
+		}
+		((Buffer)pending_).flip();
+		position_ = in.position();
+	}
+	
+	private int drainPending(final char[] cbuf, final int off,
+		final int len) {
+		final int count = Math.min(len, pending_.remaining());
+		if(count > 0) {
+			pending_.get(cbuf, off, count);
+		}
+		return count;
+	}
+	
+	/**
+	 * Moves any unconsumed bytes to the front of the buffer and reads
+	 * more.  Returns false at the end of the stream.
+	 */
+	private boolean fill() throws IOException {
+		if(eof_) {
+			return false;
+		}
+		final int remaining = limit_ - position_;
+		if(position_ > 0) {
+			System.arraycopy(bytes_, position_, bytes_, 0, remaining);
+		}
+		position_ = 0;
+		limit_ = remaining;
+		int read = 0;
+		while((read = in_.read(bytes_, limit_,
+			bytes_.length - limit_)) == 0) {
+			// Keep trying until we get some data or hit the end.
+		}
+		if(read < 0) {
+			eof_ = true;
+			return false;
+		}
+		limit_ += read;
+		return true;
+	}
+	
+}
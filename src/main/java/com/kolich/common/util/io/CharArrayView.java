@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.common.util.io;
+
+/**
+ * A reusable, mutable CharSequence over a region of a char[] array.
+ * Nothing is copied until toString() or subSequence() is called.
+ */
+final class CharArrayView implements CharSequence {
+	
+	private char[] chars_;
+	private int offset_;
+	private int length_;
+	
+	final CharArrayView set(final char[] chars, final int offset,
+		final int length) {
+		chars_ = chars;
+		offset_ = offset;
+		length_ = length;
+		return this;
+	}
+	
+	@Override
+	public int length() {
+		return length_;
+	}
+	
+	@Override
+	public char charAt(final int index) {
+		if((index < 0) || (index >= length_)) {
+			throw new IndexOutOfBoundsException("Index out of range: " +
+				index);
+		}
+		return chars_[offset_ + index];
+	}
+	
+	@Override
+	public CharSequence subSequence(final int start, final int end) {
+		if((start < 0) || (end > length_) || (start > end)) {
+			throw new IndexOutOfBoundsException("Invalid range: " + start +
+				"-" + end);
+		}
+		return new String(chars_, offset_ + start, end - start);
+	}
+	
+	@Override
+	public String toString() {
+		return new String(chars_, offset_, length_);
+	}
+	
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.common.util.io;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Positional read helpers shared by the FileChannel backed line
+ * readers.  None of these move the channel's own position, so they
+ * are safe to call concurrently against the same channel.
+ */
+final class FileChannelUtils {
+	
+	static final byte LF = '\n';
+	static final byte CR = '\r';
+	
+	private static final byte[] LF_BYTES = new byte[]{LF};
+	
+	// Cannot be instantiated.
+	private FileChannelUtils() { }
+	
+	/**
+	 * Returns true if the given charset encodes '\n' as the single
+	 * byte 0x0A and never uses that byte inside a multi-byte sequence,
+	 * meaning lines can be found by scanning raw bytes.  True for
+	 * UTF-8, US-ASCII, ISO-8859-1 and most other ASCII supersets;
+	 * false for UTF-16 and UTF-32.
+	 */
+	static final boolean isLineSplittable(final Charset charset) {
+		return charset.canEncode() &&
+			Arrays.equals(LF_BYTES, "\n".getBytes(charset));
+	}
+	
+	/**
+	 * Fills the given buffer from the channel starting at the given
+	 * file position, until the buffer is full or the end of the file
+	 * is reached.  Returns the number of bytes read.
+	 */
+	static final int readFully(final FileChannel channel,
+		final ByteBuffer buffer, final long position) throws IOException {
+		int total = 0;
+		while(buffer.hasRemaining()) {
+			final int read = channel.read(buffer, position + total);
+			if(read < 0) {
+				break;
+			}
+			total += read;
+		}
+		return total;
+	}
+	
+	/**
+	 * Returns the file offset of the first occurrence of the given byte
+	 * in [from, to), or -1 if it does not occur.
+	 */
+	static final long indexOf(final FileChannel channel, final byte b,
+		final long from, final long to, final byte[] scratch)
+		throws IOException {
+		final ByteBuffer buffer = ByteBuffer.wrap(scratch);
+		long position = from;
+		while(position < to) {
+			((Buffer)buffer).clear().limit((int)Math.min(scratch.length,
+				to - position));
+			final int read = readFully(channel, buffer, position);
+			if(read <= 0) {
+				break;
+			}
+			for(int i = 0; i < read; i++) {
+				if(scratch[i] == b) {
+					return position + i;
+				}
+			}
+			position += read;
+		}
+		return -1L;
+	}
+	
+	/**
+	 * Counts the occurrences of the given byte in [from, to).
+	 */
+	static final long count(final FileChannel channel, final byte b,
+		final long from, final long to, final byte[] scratch)
+		throws IOException {
+		final ByteBuffer buffer = ByteBuffer.wrap(scratch);
+		long count = 0L;
+		long position = from;
+		while(position < to) {
+			((Buffer)buffer).clear().limit((int)Math.min(scratch.length,
+				to - position));
+			final int read = readFully(channel, buffer, position);
+			if(read <= 0) {
+				break;
+			}
+			for(int i = 0; i < read; i++) {
+				if(scratch[i] == b) {
+					count += 1L;
+				}
+			}
+			position += read;
+		}
+		return count;
+	}
+	
+	/**
+	 * Counts the lines ending in [from, to), where a line is terminated
+	 * by '\n', '\r' or "\r\n", same as
+	 * {@link java.io.BufferedReader#readLine()}.
+	 */
+	static final long countLines(final FileChannel channel, final long from,
+		final long to, final byte[] scratch) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.wrap(scratch);
+		long count = 0L;
+		long position = from;
+		boolean cr = false;
+		while(position < to) {
+			((Buffer)buffer).clear().limit((int)Math.min(scratch.length,
+				to - position));
+			final int read = readFully(channel, buffer, position);
+			if(read <= 0) {
+				break;
+			}
+			for(int i = 0; i < read; i++) {
+				final byte b = scratch[i];
+				// Every '\r' ends a line, a '\n' only when it isn't the
+				// second half of a "\r\n".
+				if(b == CR || (b == LF && !cr)) {
+					count += 1L;
+				}
+				cr = (b == CR);
+			}
+			position += read;
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns the length of the given line with a single trailing '\r'
+	 * removed, if there is one.
+	 */
+	static final int stripCR(final byte[] bytes, final int offset,
+		final int length) {
+		return (length > 0 && bytes[offset + length - 1] == CR) ?
+			length - 1 : length;
+	}
+	
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.common.util.io;
+
+import static com.kolich.common.util.io.AsciiFastPathReader.decode;
+import static com.kolich.common.util.io.FileChannelUtils.CR;
+import static com.kolich.common.util.io.FileChannelUtils.LF;
+import static com.kolich.common.util.io.FileChannelUtils.countLines;
+import static com.kolich.common.util.io.FileChannelUtils.indexOf;
+import static com.kolich.common.util.io.FileChannelUtils.readFully;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A Spliterator over the lines in a byte range of a file.  Splits
+ * are made at the midpoint of the remaining range and then pushed
+ * forward to the next line boundary, so every split starts exactly
+ * at the start of a line and owns every line starting within it.
+ * 
+ * Lines are terminated by '\n', '\r' or "\r\n", same as
+ * {@link java.io.BufferedReader#readLine()}.  Splits are only ever
+ * made after a '\n', which always ends a line.
+ * 
+ * Only usable with charsets where '\n' is the single byte 0x0A;
+ * see {@link FileChannelUtils#isLineSplittable(Charset)}.
+ */
+final class FileLineSpliterator<T> implements Spliterator<T> {
+	
+	/**
+	 * Maps a decoded line, and its line number, to a stream element.
+	 */
+	interface LineMapper<T> {
+		public T map(final long lineNumber, final String line);
+	}
+	
+	private static final int BLOCK_SIZE = 8192;
+	
+	/**
+	 * Ranges smaller than this are not worth handing to another thread.
+	 */
+	private static final long MIN_SPLIT_SIZE = 64L * 1024L;
+	
+	private final FileChannel channel_;
+	private final Charset charset_;
+	private final LineMapper<T> mapper_;
+	
+	/**
+	 * True if line numbers are being tracked, in which case each
+	 * split has to count the lines in the prefix it hands off.
+	 */
+	private final boolean numbered_;
+	
+	private long position_;
+	private final long end_;
+	private long lineNumber_;
+	
+	private byte[] block_;
+	private ByteBuffer blockBuffer_;
+	private int blockIndex_;
+	private int blockLimit_;
+	
+	/**
+	 * True if the last line ended with a '\r', in which case a '\n'
+	 * immediately following it is part of the same terminator.
+	 */
+	private boolean skipLF_;
+	
+	/**
+	 * Accumulates the bytes of a line that spans more than one block.
+	 */
+	private byte[] carry_;
+	private int carryLength_;
+	
+	FileLineSpliterator(final FileChannel channel, final Charset charset,
+		final long start, final long end, final long firstLineNumber,
+		final boolean numbered, final LineMapper<T> mapper) {
+		channel_ = channel;
+		charset_ = charset;
+		mapper_ = mapper;
+		numbered_ = numbered;
+		position_ = start;
+		end_ = end;
+		lineNumber_ = firstLineNumber;
+	}
+	
+	@Override
+	public boolean tryAdvance(final Consumer<? super T> action) {
+		try {
+			return readLine(action);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	@Override
+	public Spliterator<T> trySplit() {
+		// Can only split before traversal begins.
+		if(block_ != null) {
+			return null;
+		}
+		final long remaining = end_ - position_;
+		if(remaining < MIN_SPLIT_SIZE) {
+			return null;
+		}
+		try {
+			final byte[] scratch = new byte[BLOCK_SIZE];
+			final long newline = indexOf(channel_, LF,
+				position_ + (remaining / 2L) - 1L, end_, scratch);
+			if((newline < 0L) || (newline + 1L >= end_)) {
+				return null;
+			}
+			final long split = newline + 1L;
+			final FileLineSpliterator<T> prefix =
+				new FileLineSpliterator<T>(channel_, charset_, position_,
+					split, lineNumber_, numbered_, mapper_);
+			if(numbered_) {
+				lineNumber_ += countLines(channel_, position_, split,
+					scratch);
+			}
+			position_ = split;
+			return prefix;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	@Override
+	public long estimateSize() {
+		// Bytes rather than lines, but it's only used to weigh splits
+		// against one another.
+		return end_ - position_ + (blockLimit_ - blockIndex_);
+	}
+	
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL;
+	}
+	
+	private boolean readLine(final Consumer<? super T> action)
+		throws IOException {
+		boolean found = false;
+		while(true) {
+			if(blockIndex_ >= blockLimit_) {
+				if(!readBlock()) {
+					break;
+				}
+			}
+			if(skipLF_) {
+				skipLF_ = false;
+				if(block_[blockIndex_] == LF) {
+					blockIndex_ += 1;
+					continue;
+				}
+			}
+			found = true;
+			final int start = blockIndex_;
+			for(int i = start; i < blockLimit_; i++) {
+				final byte b = block_[i];
+				if(b == LF || b == CR) {
+					blockIndex_ = i + 1;
+					skipLF_ = (b == CR);
+					emit(start, i - start, action);
+					return true;
+				}
+			}
+			append(start, blockLimit_ - start);
+			blockIndex_ = blockLimit_;
+		}
+		// End of range, with a final line that has no terminator.
+		if(found) {
+			emit(0, 0, action);
+		}
+		return found;
+	}
+	
+	private boolean readBlock() throws IOException {
+		if(position_ >= end_) {
+			return false;
+		}
+		if(block_ == null) {
+			block_ = new byte[BLOCK_SIZE];
+			blockBuffer_ = ByteBuffer.wrap(block_);
+		}
+		((Buffer)blockBuffer_).clear().limit((int)Math.min(BLOCK_SIZE,
+			end_ - position_));
+		final int read = readFully(channel_, blockBuffer_, position_);
+		if(read <= 0) {
+			return false;
+		}
+		position_ += read;
+		blockIndex_ = 0;
+		blockLimit_ = read;
+		return true;
+	}
+	
+	private void emit(final int offset, final int length,
+		final Consumer<? super T> action) {
+		final String line;
+		if(carryLength_ == 0) {
+			line = decode(block_, offset, length, charset_);
+		} else {
+			append(offset, length);
+			line = decode(carry_, 0, carryLength_, charset_);
+			carryLength_ = 0;
+		}
+		action.accept(mapper_.map(lineNumber_, line));
+		lineNumber_ += 1L;
+	}
+	
+	private void append(final int offset, final int length) {
+		if(carry_ == null) {
+			carry_ = new byte[Math.max(BLOCK_SIZE, length)];
+		} else if(carryLength_ + length > carry_.length) {
+			final byte[] grown = new byte[Math.max(carry_.length * 2,
+				carryLength_ + length)];
+			System.arraycopy(carry_, 0, grown, 0, carryLength_);
+			carry_ = grown;
+		}
+		System.arraycopy(block_, offset, carry_, carryLength_, length);
+		carryLength_ += length;
+	}
+	
+}
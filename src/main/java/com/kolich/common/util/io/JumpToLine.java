@@ -26,24 +26,62 @@
 
 package com.kolich.common.util.io;
 
-import static com.kolich.common.DefaultCharacterEncoding.UTF_8;
-import static org.apache.commons.io.IOUtils.lineIterator;
+import static com.kolich.common.DefaultCharacterEncoding.UTF_8_CHARSET;
+import static com.kolich.common.util.io.FileChannelUtils.isLineSplittable;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.LineIterator;
 
 public final class JumpToLine {
 	
+	private static final int DEFAULT_BUFFER_SIZE = 8192;
+	
 	private final InputStream is_;
-	private final String charsetName_;
+	private final Charset charset_;
+	
+	private final Reader reader_;
 	
-	private final LineIterator it_;
+	/**
+	 * Decoded characters read from the underlying reader; lines are
+	 * located and handed out directly from this buffer.
+	 */
+	private char[] buffer_;
+	private int position_;
+	private int limit_;
+	
+	/**
+	 * The bounds of the most recently located line in the buffer,
+	 * valid while {@link #pending_} is true.
+	 */
+	private int lineStart_;
+	private int lineEnd_;
+	private boolean pending_;
+	
+	/**
+	 * True if the last line ended with a '\r' at the very end of the
+	 * buffer, in which case a '\n' at the start of the next read is
+	 * part of the same "\r\n" line terminator.
+	 */
+	private boolean skipLF_;
+	
+	private final CharArrayView view_;
 	
 	private long lastLineRead_ = -1L;
 	
@@ -52,21 +90,31 @@ public final class JumpToLine {
 	 * to the line in the file that's next to be read; skipping over
 	 * lines in the file this reader has already read.
 	 */
-	public JumpToLine(final InputStream is, final String charsetName)
-		throws IOException {
+	public JumpToLine(final InputStream is, final Charset charset) {
 		is_ = is;
-		charsetName_ = charsetName;
+		charset_ = charset;
 		lastLineRead_ = 1L;
-		try {
-			it_ = lineIterator(is_, charsetName_);
-		} catch (IOException e) {
-			close();
-			throw e;
-		}
+		// US-ASCII, ISO-8859-1 and UTF-8 input copies ASCII runs straight
+		// into our buffer, only non-ASCII runs go through a decoder.
+		reader_ = AsciiFastPathReader.isFastPath(charset_) ?
+			new AsciiFastPathReader(is_, charset_) :
+			new InputStreamReader(is_, charset_);
+		buffer_ = new char[DEFAULT_BUFFER_SIZE];
+		view_ = new CharArrayView();
+	}
+	
+	public JumpToLine(final InputStream is, final String charsetName)
+		throws IOException {
+		this(is, forName(is, charsetName));
 	}
 	
 	public JumpToLine(final InputStream is) throws IOException {
-		this(is, UTF_8);
+		this(is, UTF_8_CHARSET);
+	}
+	
+	public JumpToLine(final File file, final Charset charset)
+		throws IOException {
+		this(new FileInputStream(file), charset);
 	}
 	
 	public JumpToLine(final File file, final String charsetName)
@@ -75,7 +123,7 @@ public final class JumpToLine {
 	}
 	
 	public JumpToLine(final File file) throws IOException {
-		this(file, UTF_8);
+		this(file, UTF_8_CHARSET);
 	}
 		
 	/**
@@ -91,8 +139,9 @@ public final class JumpToLine {
 	 */
 	public long seek(final long line) {
 		long lineCount = 1L;
-		while((it_ != null) && (it_.hasNext()) && (lineCount < line)) {
-			it_.nextLine();
+		// Skipped lines are never turned into Strings.
+		while(hasNext() && (lineCount < line)) {
+			pending_ = false;
 			lineCount += 1L;
 		}
 		// If we got to the end of the file, but haven't read as many
@@ -107,12 +156,11 @@ public final class JumpToLine {
 	}
 	
 	/**
-	 * Closes this IOUtils LineIterator and the underlying
-	 * input stream reader.
+	 * Closes the underlying input stream reader.
 	 */
 	public void close() {
 		IOUtils.closeQuietly(is_);
-		LineIterator.closeQuietly(it_);
+		IOUtils.closeQuietly(reader_);
 	}
 	
 	/**
@@ -121,7 +169,15 @@ public final class JumpToLine {
 	 * @return
 	 */
 	public boolean hasNext() {
-		return it_.hasNext();
+		if(!pending_) {
+			try {
+				pending_ = nextLine();
+			} catch (IOException e) {
+				close();
+				throw new IllegalStateException(e);
+			}
+		}
+		return pending_;
 	}
 	
 	/**
@@ -129,20 +185,298 @@ public final class JumpToLine {
 	 * @return
 	 */
 	public String readLine() {
-		String ret = null;
-		try {
-			// If there is nothing more to read with this LineIterator
-			// then nextLine() throws a NoSuchElementException.
-			ret = it_.nextLine();
+		// If there is nothing more to read then this throws a
+		// NoSuchElementException.
+		if(!hasNext()) {
+			throw new NoSuchElementException("No more lines to read.");
+		}
+		pending_ = false;
+		lastLineRead_ += 1L;
+		return new String(buffer_, lineStart_, lineEnd_ - lineStart_);
+	}
+	
+	/**
+	 * Hands each remaining line to the given visitor, in order, until
+	 * the visitor returns false or there are no more lines to read.
+	 * Unlike {@link #readLine()}, no String is created per line; the
+	 * visitor is given a view directly over this reader's internal
+	 * buffer which is only valid for the duration of the callback.
+	 * @return the number of lines handed to the visitor
+	 */
+	public long visit(final LineVisitor visitor) {
+		long visited = 0L;
+		while(hasNext()) {
+			pending_ = false;
+			view_.set(buffer_, lineStart_, lineEnd_ - lineStart_);
+			final long lineNumber = lastLineRead_;
 			lastLineRead_ += 1L;
-		} catch (NoSuchElementException e) {
-			throw e;
+			visited += 1L;
+			if(!visitor.visit(lineNumber, view_)) {
+				break;
+			}
 		}
-		return ret;
+		return visited;
 	}
 	
 	public long getLastLineRead() {
 		return lastLineRead_;
 	}
+	
+	/**
+	 * Used when the underlying stream starts part way into a file whose
+	 * line numbers are already known.
+	 */
+	void setLastLineRead(final long lastLineRead) {
+		lastLineRead_ = lastLineRead;
+	}
+	
+	/**
+	 * Returns a sequential Stream of the remaining lines in this reader.
+	 * Closing the Stream closes this reader.
+	 */
+	public Stream<String> lines() {
+		return stream(new FileLineSpliterator.LineMapper<String>() {
+			@Override
+			public String map(final long lineNumber, final String line) {
+				return line;
+			}
+		});
+	}
+	
+	/**
+	 * Returns a sequential Stream of the remaining lines in this reader,
+	 * each paired with its line number.  Closing the Stream closes
+	 * this reader.
+	 */
+	public Stream<NumberedLine> numberedLines() {
+		return stream(new FileLineSpliterator.LineMapper<NumberedLine>() {
+			@Override
+			public NumberedLine map(final long lineNumber, final String line) {
+				return new NumberedLine(lineNumber, line);
+			}
+		});
+	}
+	
+	private <T> Stream<T> stream(final FileLineSpliterator.LineMapper<T> mapper) {
+		final Spliterator<T> spliterator =
+			new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+				Spliterator.ORDERED | Spliterator.NONNULL) {
+			@Override
+			public boolean tryAdvance(final Consumer<? super T> action) {
+				if(!hasNext()) {
+					return false;
+				}
+				final long lineNumber = lastLineRead_;
+				action.accept(mapper.map(lineNumber, readLine()));
+				return true;
+			}
+		};
+		return StreamSupport.stream(spliterator, false).onClose(
+			new Runnable() {
+				@Override
+				public void run() {
+					close();
+				}
+			});
+	}
+	
+	/**
+	 * Returns (up to) the last N lines of the given file, in file order.
+	 * Reads the file backwards from the end, so the cost is proportional
+	 * to the lines returned rather than the size of the file.
+	 * @see ReverseLineReader
+	 */
+	public static final List<String> tail(final File file,
+		final Charset charset, final int lines) throws IOException {
+		final ReverseLineReader reader = new ReverseLineReader(file,
+			charset);
+		try {
+			return reader.tail(lines);
+		} finally {
+			IOUtils.closeQuietly(reader);
+		}
+	}
+	
+	public static final List<String> tail(final File file,
+		final String charsetName, final int lines) throws IOException {
+		return tail(file, Charset.forName(charsetName), lines);
+	}
+	
+	public static final List<String> tail(final File file, final int lines)
+		throws IOException {
+		return tail(file, UTF_8_CHARSET, lines);
+	}
+	
+	/**
+	 * Returns a Stream of the lines in the given file.  For charsets
+	 * where '\n' is a single byte (UTF-8, US-ASCII, ISO-8859-1, ...)
+	 * the Stream splits the file at line boundaries, so calling
+	 * parallel() on it spreads the work across cores.  Lines are
+	 * terminated by '\n', '\r' or "\r\n", same as {@link #lines()}.
+	 * Closing the Stream closes the file.
+	 */
+	public static final Stream<String> lines(final File file,
+		final Charset charset) throws IOException {
+		if(!isLineSplittable(charset)) {
+			return new JumpToLine(file, charset).lines();
+		}
+		return stream(file, charset, false,
+			new FileLineSpliterator.LineMapper<String>() {
+			@Override
+			public String map(final long lineNumber, final String line) {
+				return line;
+			}
+		});
+	}
+	
+	public static final Stream<String> lines(final File file,
+		final String charsetName) throws IOException {
+		return lines(file, Charset.forName(charsetName));
+	}
+	
+	public static final Stream<String> lines(final File file)
+		throws IOException {
+		return lines(file, UTF_8_CHARSET);
+	}
+	
+	/**
+	 * Same as {@link #lines(File, Charset)} but pairs each line with
+	 * its line number.  When run in parallel, each split has to count
+	 * the lines in the range it hands off, which means an extra pass
+	 * over roughly half of each range being split.
+	 */
+	public static final Stream<NumberedLine> numberedLines(final File file,
+		final Charset charset) throws IOException {
+		if(!isLineSplittable(charset)) {
+			return new JumpToLine(file, charset).numberedLines();
+		}
+		return stream(file, charset, true,
+			new FileLineSpliterator.LineMapper<NumberedLine>() {
+			@Override
+			public NumberedLine map(final long lineNumber, final String line) {
+				return new NumberedLine(lineNumber, line);
+			}
+		});
+	}
+	
+	public static final Stream<NumberedLine> numberedLines(final File file,
+		final String charsetName) throws IOException {
+		return numberedLines(file, Charset.forName(charsetName));
+	}
+	
+	public static final Stream<NumberedLine> numberedLines(final File file)
+		throws IOException {
+		return numberedLines(file, UTF_8_CHARSET);
+	}
+	
+	/**
+	 * Looks up a charset by name, closing the given stream and failing
+	 * with an {@link UnsupportedEncodingException} if it doesn't exist;
+	 * same as an {@link InputStreamReader} would.
+	 */
+	private static final Charset forName(final InputStream is,
+		final String charsetName) throws UnsupportedEncodingException {
+		try {
+			return Charset.forName(charsetName);
+		} catch (IllegalArgumentException e) {
+			IOUtils.closeQuietly(is);
+			throw new UnsupportedEncodingException(charsetName);
+		}
+	}
+	
+	private static final <T> Stream<T> stream(final File file,
+		final Charset charset, final boolean numbered,
+		final FileLineSpliterator.LineMapper<T> mapper) throws IOException {
+		final FileChannel channel = FileChannel.open(file.toPath(),
+			StandardOpenOption.READ);
+		try {
+			return StreamSupport.stream(new FileLineSpliterator<T>(channel,
+				charset, 0L, channel.size(), 1L, numbered, mapper), false)
+				.onClose(new Runnable() {
+					@Override
+					public void run() {
+						IOUtils.closeQuietly(channel);
+					}
+				});
+		} catch (IOException e) {
+			IOUtils.closeQuietly(channel);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Locates the next line in the buffer, reading more from the
+	 * underlying reader as needed.  Lines are terminated by '\n', '\r'
+	 * or "\r\n", same as {@link java.io.BufferedReader#readLine()}.
+	 * Returns false if there are no more lines.
+	 */
+	private boolean nextLine() throws IOException {
+		int scanned = 0;
+		while(true) {
+			if(skipLF_ && (position_ < limit_)) {
+				if(buffer_[position_] == '\n') {
+					position_ += 1;
+				}
+				skipLF_ = false;
+			}
+			for(int i = position_ + scanned; i < limit_; i++) {
+				final char c = buffer_[i];
+				if((c == '\n') || (c == '\r')) {
+					lineStart_ = position_;
+					lineEnd_ = i;
+					position_ = i + 1;
+					if(c == '\r') {
+						if(position_ < limit_) {
+							if(buffer_[position_] == '\n') {
+								position_ += 1;
+							}
+						} else {
+							skipLF_ = true;
+						}
+					}
+					return true;
+				}
+			}
+			scanned = limit_ - position_;
+			if(!fill()) {
+				// End of stream; whatever is left is the last line.
+				if(position_ < limit_) {
+					lineStart_ = position_;
+					lineEnd_ = limit_;
+					position_ = limit_;
+					return true;
+				}
+				return false;
+			}
+		}
+	}
+	
+	/**
+	 * Compacts any unconsumed characters to the front of the buffer,
+	 * growing it if a single line fills it entirely, and reads more.
+	 * Returns false at the end of the stream.
+	 */
+	private boolean fill() throws IOException {
+		final int remaining = limit_ - position_;
+		if(remaining == buffer_.length) {
+			final char[] grown = new char[buffer_.length * 2];
+			System.arraycopy(buffer_, position_, grown, 0, remaining);
+			buffer_ = grown;
+		} else if(position_ > 0) {
+			System.arraycopy(buffer_, position_, buffer_, 0, remaining);
+		}
+		position_ = 0;
+		limit_ = remaining;
+		int read = 0;
+		while((read = reader_.read(buffer_, limit_,
+			buffer_.length - limit_)) == 0) {
+			// Keep trying until we get some data or hit the end.
+		}
+		if(read < 0) {
+			return false;
+		}
+		limit_ += read;
+		return true;
+	}
 
 }
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.common.util.io;
+
+import static com.kolich.common.util.io.FileChannelUtils.LF;
+import static com.kolich.common.util.io.FileChannelUtils.count;
+import static com.kolich.common.util.io.FileChannelUtils.readFully;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A sparse index of line start offsets in a file, recording the byte
+ * offset of every Nth line.  Turns a byte offset back into an exact
+ * line number by counting newlines from the nearest indexed line,
+ * rather than from the start of the file.
+ */
+public final class LineIndex {
+	
+	private static final int BLOCK_SIZE = 8192;
+	
+	/**
+	 * The default number of lines between indexed offsets.
+	 */
+	private static final int DEFAULT_INTERVAL = 1024;
+	
+	private final int interval_;
+	
+	/**
+	 * offsets_[k] is the byte offset of line (k * interval_) + 1.
+	 */
+	private final long[] offsets_;
+	
+	private LineIndex(final int interval, final long[] offsets) {
+		interval_ = interval;
+		offsets_ = offsets;
+	}
+	
+	/**
+	 * Scans the given file once, recording the offset of every Nth line.
+	 */
+	public static final LineIndex build(final FileChannel channel,
+		final int interval) throws IOException {
+		if(interval < 1) {
+			throw new IllegalArgumentException("Index interval must be " +
+				"greater than zero.");
+		}
+		final byte[] block = new byte[BLOCK_SIZE];
+		final ByteBuffer buffer = ByteBuffer.wrap(block);
+		long[] offsets = new long[16];
+		int indexed = 1; // Line 1 always starts at offset zero.
+		long lines = 0L;
+		long position = 0L;
+		int read = 0;
+		((Buffer)buffer).clear();
+		while((read = readFully(channel, buffer, position)) > 0) {
+			for(int i = 0; i < read; i++) {
+				if(block[i] == LF) {
+					lines += 1L;
+					if((lines % interval) == 0L) {
+						if(indexed == offsets.length) {
+							offsets = Arrays.copyOf(offsets, indexed * 2);
+						}
+						offsets[indexed++] = position + i + 1L;
+					}
+				}
+			}
+			position += read;
+			((Buffer)buffer).clear();
+		}
+		return new LineIndex(interval, Arrays.copyOf(offsets, indexed));
+	}
+	
+	public static final LineIndex build(final FileChannel channel)
+		throws IOException {
+		return build(channel, DEFAULT_INTERVAL);
+	}
+	
+	/**
+	 * Returns the (1-based) number of the line that starts at the given
+	 * byte offset.  Reads at most one index interval's worth of the file.
+	 */
+	public long getLineNumber(final FileChannel channel, final long offset)
+		throws IOException {
+		int k = Arrays.binarySearch(offsets_, offset);
+		if(k < 0) {
+			// Not an indexed line; start from the closest one before it.
+			k = -k - 2;
+		}
+		return 1L + ((long)k * interval_) + count(channel, LF, offsets_[k],
+			offset, new byte[BLOCK_SIZE]);
+	}
+	
+	public int getInterval() {
+		return interval_;
+	}
+	
+}
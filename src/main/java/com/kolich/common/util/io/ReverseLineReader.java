@@ -0,0 +1,315 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.common.util.io;
+
+import static com.kolich.common.DefaultCharacterEncoding.UTF_8_CHARSET;
+import static com.kolich.common.util.io.FileChannelUtils.CR;
+import static com.kolich.common.util.io.FileChannelUtils.LF;
+import static com.kolich.common.util.io.FileChannelUtils.readFully;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Reads lines from a file backwards, last line first, by pulling
+ * fixed-size blocks off the end of a {@link FileChannel}.  The cost
+ * of reading the last N lines of a file is proportional to the size
+ * of those lines, not the size of the file.
+ * 
+ * Lines are terminated by '\n', '\r' or "\r\n", same as
+ * {@link JumpToLine#readLine()}, so the charset must encode both as
+ * the single bytes 0x0A and 0x0D (UTF-8, US-ASCII, ISO-8859-1 and
+ * friends; not UTF-16 or UTF-32).
+ */
+public final class ReverseLineReader implements Closeable {
+	
+	private static final int DEFAULT_BLOCK_SIZE = 8192;
+	
+	private final FileChannel channel_;
+	private final Charset charset_;
+	
+	private final byte[] block_;
+	private final ByteBuffer blockBuffer_;
+	
+	/**
+	 * File offset of the first byte currently loaded in the block.
+	 * Everything before this offset has yet to be read off disk.
+	 */
+	private long blockOffset_;
+	
+	/**
+	 * Exclusive end, within the block, of the next line to return.
+	 */
+	private int cursor_;
+	
+	/**
+	 * True if the byte just before the cursor ends a line with '\n', in
+	 * which case a '\r' right before it is part of the same terminator.
+	 * Resolved lazily, since that '\r' may be in the previous block.
+	 */
+	private boolean skipCR_;
+	
+	/**
+	 * Gathers the bytes of a line that spans more than one block, filled
+	 * from the back, from carryStart_ to the end of the array.
+	 */
+	private byte[] carry_;
+	private int carryStart_;
+	
+	private boolean exhausted_;
+	
+	/**
+	 * @param closeOnFailure true if the channel was opened on behalf
+	 * of the caller, and so must be closed here if the first block
+	 * can't be read
+	 */
+	private ReverseLineReader(final FileChannel channel,
+		final Charset charset, final int blockSize,
+		final boolean closeOnFailure) throws IOException {
+		if(blockSize < 1) {
+			throw new IllegalArgumentException("Block size must be " +
+				"greater than zero.");
+		}
+		channel_ = channel;
+		charset_ = charset;
+		block_ = new byte[blockSize];
+		blockBuffer_ = ByteBuffer.wrap(block_);
+		try {
+			blockOffset_ = channel_.size();
+			cursor_ = 0;
+			exhausted_ = !loadPreviousBlock();
+		} catch (IOException | RuntimeException e) {
+			if(closeOnFailure) {
+				IOUtils.closeQuietly(channel_);
+			}
+			throw e;
+		}
+		// A single trailing line terminator at the end of the file ends
+		// the last line, it doesn't start a new (empty) one.
+		if(!exhausted_) {
+			final byte last = block_[cursor_ - 1];
+			if(last == LF || last == CR) {
+				cursor_ -= 1;
+				skipCR_ = (last == LF);
+			}
+		}
+	}
+	
+	public ReverseLineReader(final FileChannel channel,
+		final Charset charset, final int blockSize) throws IOException {
+		this(channel, charset, blockSize, false);
+	}
+	
+	public ReverseLineReader(final FileChannel channel,
+		final String charsetName, final int blockSize) throws IOException {
+		this(channel, Charset.forName(charsetName), blockSize);
+	}
+	
+	public ReverseLineReader(final FileChannel channel,
+		final Charset charset) throws IOException {
+		this(channel, charset, DEFAULT_BLOCK_SIZE);
+	}
+	
+	public ReverseLineReader(final FileChannel channel,
+		final String charsetName) throws IOException {
+		this(channel, Charset.forName(charsetName));
+	}
+	
+	public ReverseLineReader(final File file, final Charset charset)
+		throws IOException {
+		this(open(file), charset, DEFAULT_BLOCK_SIZE, true);
+	}
+	
+	public ReverseLineReader(final File file, final String charsetName)
+		throws IOException {
+		this(file, Charset.forName(charsetName));
+	}
+	
+	public ReverseLineReader(final File file) throws IOException {
+		this(file, UTF_8_CHARSET);
+	}
+	
+	/**
+	 * Returns true if there are any more lines to read, walking
+	 * backwards towards the start of the file.
+	 */
+	public boolean hasNext() {
+		return !exhausted_;
+	}
+	
+	/**
+	 * Reads the previous line of text, starting with the last line
+	 * in the file and walking towards the first.
+	 */
+	public String readLine() throws IOException {
+		if(exhausted_) {
+			throw new NoSuchElementException("No more lines to read.");
+		}
+		if(skipCR_) {
+			skipCR_ = false;
+			if((cursor_ > 0 || loadPreviousBlock()) &&
+				block_[cursor_ - 1] == CR) {
+				cursor_ -= 1;
+			}
+		}
+		carryStart_ = (carry_ != null) ? carry_.length : 0;
+		int end = cursor_;
+		while(true) {
+			for(int i = end - 1; i >= 0; i--) {
+				final byte b = block_[i];
+				if(b == LF || b == CR) {
+					cursor_ = i;
+					skipCR_ = (b == LF);
+					return decode(i + 1, end);
+				}
+			}
+			// Keep the part of the line we've seen so far, the rest of it
+			// is in an earlier block.
+			prepend(0, end);
+			if(!loadPreviousBlock()) {
+				// Reached the start of the file; whatever we've gathered
+				// is the first line.
+				exhausted_ = true;
+				return decode(0, 0);
+			}
+			end = cursor_;
+		}
+	}
+	
+	/**
+	 * Returns (up to) the last N lines of the file, in the order
+	 * they appear in the file.  Only the blocks containing those
+	 * lines are read.
+	 */
+	public List<String> tail(final int lines) throws IOException {
+		if(lines < 0) {
+			throw new IllegalArgumentException("Number of lines cannot " +
+				"be negative.");
+		}
+		// Don't trust the requested count to size the list, it's
+		// often far larger than the file.
+		final List<String> tail = new ArrayList<String>(
+			Math.min(lines, 16));
+		while(tail.size() < lines && hasNext()) {
+			tail.add(readLine());
+		}
+		Collections.reverse(tail);
+		return tail;
+	}
+	
+	/**
+	 * Closes the underlying file channel.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel_.close();
+	}
+	
+	/**
+	 * Reads the block that precedes the one currently loaded.  Returns
+	 * false if we're already at the start of the file.
+	 */
+	private boolean loadPreviousBlock() throws IOException {
+		if(blockOffset_ <= 0L) {
+			return false;
+		}
+		final int size = (int)Math.min(block_.length, blockOffset_);
+		blockOffset_ -= size;
+		// Cast to Buffer, the covariant ByteBuffer overrides don't
+		// exist on a Java 8 runtime.
+		((Buffer)blockBuffer_).clear().limit(size);
+		if(readFully(channel_, blockBuffer_, blockOffset_) < size) {
+			throw new IOException("Unexpected end of file before offset " +
+				(blockOffset_ + size));
+		}
+		cursor_ = size;
+		return true;
+	}
+	
+	private static final FileChannel open(final File file)
+		throws IOException {
+		return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+	}
+	
+	/**
+	 * Decodes the line made up of the given range of the current block
+	 * followed by any bytes carried over from later blocks.
+	 */
+	private final String decode(final int start, final int end) {
+		final int carried = (carry_ != null) ? carry_.length - carryStart_ :
+			0;
+		if(carried == 0) {
+			return AsciiFastPathReader.decode(block_, start, end - start,
+				charset_);
+		}
+		prepend(start, end);
+		return AsciiFastPathReader.decode(carry_, carryStart_,
+			carry_.length - carryStart_, charset_);
+	}
+	
+	/**
+	 * Copies the given range of the current block in front of the bytes
+	 * carried so far, doubling the carry buffer as needed so that a line
+	 * spanning many blocks is gathered in linear time.
+	 */
+	private final void prepend(final int start, final int end) {
+		final int length = end - start;
+		if(carry_ == null || carryStart_ < length) {
+			final int carried = (carry_ != null) ?
+				carry_.length - carryStart_ : 0;
+			final int capacity = (int)Math.min(Integer.MAX_VALUE - 8,
+				Math.max(2L * ((carry_ != null) ? carry_.length : 0),
+					Math.max((long)block_.length, (long)carried + length)));
+			if(capacity < carried + length) {
+				throw new OutOfMemoryError("Line is too long.");
+			}
+			final byte[] grown = new byte[capacity];
+			if(carried > 0) {
+				System.arraycopy(carry_, carryStart_, grown,
+					capacity - carried, carried);
+			}
+			carry_ = grown;
+			carryStart_ = capacity - carried;
+		}
+		carryStart_ -= length;
+		System.arraycopy(block_, start, carry_, carryStart_, length);
+	}
+	
+
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.common.util.io;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.kolich.common.DefaultCharacterEncoding.UTF_8_CHARSET;
+import static com.kolich.common.util.io.AsciiFastPathReader.decode;
+import static com.kolich.common.util.io.FileChannelUtils.LF;
+import static com.kolich.common.util.io.FileChannelUtils.indexOf;
+import static com.kolich.common.util.io.FileChannelUtils.isLineSplittable;
+import static com.kolich.common.util.io.FileChannelUtils.readFully;
+import static com.kolich.common.util.io.FileChannelUtils.stripCR;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.Function;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Finds lines in a file whose lines are sorted by some key, like a
+ * log whose lines start with an ISO-8601 timestamp, by binary searching
+ * over byte offsets instead of reading every line.  Each probe jumps to
+ * a byte offset, realigns to the start of the next line, and compares
+ * that line's key; a seek costs a few dozen small reads regardless of
+ * the size of the file.
+ * 
+ * Lines are split on '\n', so the charset must encode '\n' as the
+ * single byte 0x0A (UTF-8, US-ASCII, ISO-8859-1 and friends).
+ */
+public final class SortedFileSeeker<K> implements Closeable {
+	
+	private static final int BLOCK_SIZE = 8192;
+	
+	private final File file_;
+	private final FileChannel channel_;
+	private final Charset charset_;
+	
+	private final Function<String,K> keyExtractor_;
+	private final Comparator<? super K> comparator_;
+	
+	/**
+	 * Optional, used to translate offsets into exact line numbers.
+	 */
+	private final LineIndex index_;
+	
+	public SortedFileSeeker(final File file, final Charset charset,
+		final Function<String,K> keyExtractor,
+		final Comparator<? super K> comparator, final LineIndex index)
+		throws IOException {
+		checkNotNull(keyExtractor, "Key extractor cannot be null.");
+		checkNotNull(comparator, "Key comparator cannot be null.");
+		file_ = file;
+		charset_ = charset;
+		if(!isLineSplittable(charset_)) {
+			throw new IllegalArgumentException("Charset " + charset.name() +
+				" does not encode a newline as a single byte.");
+		}
+		channel_ = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		keyExtractor_ = keyExtractor;
+		comparator_ = comparator;
+		index_ = index;
+	}
+	
+	public SortedFileSeeker(final File file, final String charsetName,
+		final Function<String,K> keyExtractor,
+		final Comparator<? super K> comparator, final LineIndex index)
+		throws IOException {
+		this(file, Charset.forName(charsetName), keyExtractor, comparator,
+			index);
+	}
+	
+	public SortedFileSeeker(final File file, final Charset charset,
+		final Function<String,K> keyExtractor,
+		final Comparator<? super K> comparator) throws IOException {
+		this(file, charset, keyExtractor, comparator, null);
+	}
+	
+	public SortedFileSeeker(final File file, final String charsetName,
+		final Function<String,K> keyExtractor,
+		final Comparator<? super K> comparator) throws IOException {
+		this(file, Charset.forName(charsetName), keyExtractor, comparator);
+	}
+	
+	public SortedFileSeeker(final File file,
+		final Function<String,K> keyExtractor,
+		final Comparator<? super K> comparator) throws IOException {
+		this(file, UTF_8_CHARSET, keyExtractor, comparator);
+	}
+	
+	/**
+	 * Returns the byte offset of the first line whose key is greater
+	 * than or equal to the given key, or the size of the file if there
+	 * is no such line.
+	 */
+	public long seekOffset(final K key) throws IOException {
+		final byte[] scratch = new byte[BLOCK_SIZE];
+		final long size = channel_.size();
+		// Binary search for the smallest byte position p where the line
+		// starting at, or just after, p has a key >= the target.
+		long lo = 0L, hi = size;
+		while(lo < hi) {
+			final long mid = lo + ((hi - lo) >>> 1);
+			final long start = lineStartAtOrAfter(mid, size, scratch);
+			if(start >= size) {
+				hi = mid;
+				continue;
+			}
+			final K found = keyExtractor_.apply(readLineAt(start, size,
+				scratch));
+			if(comparator_.compare(found, key) >= 0) {
+				hi = mid;
+			} else {
+				// Every position up to and including the start of this
+				// line leads back to this line; skip past it.
+				lo = start + 1L;
+			}
+		}
+		return lineStartAtOrAfter(lo, size, scratch);
+	}
+	
+	/**
+	 * Returns the (1-based) line number of the first line whose key is
+	 * greater than or equal to the given key, or -1 if there is no such
+	 * line.  Requires a {@link LineIndex}.
+	 */
+	public long seekLine(final K key) throws IOException {
+		if(index_ == null) {
+			throw new IllegalStateException("Seeking to a line number " +
+				"requires a line index.");
+		}
+		final long offset = seekOffset(key);
+		if(offset >= channel_.size()) {
+			return -1L;
+		}
+		return index_.getLineNumber(channel_, offset);
+	}
+	
+	/**
+	 * Returns a new {@link JumpToLine} positioned at the first line whose
+	 * key is greater than or equal to the given key.  If a line index is
+	 * available the reader's line count starts at the exact line number,
+	 * otherwise it starts at 1 relative to the found line.  The caller is
+	 * responsible for closing the returned reader.
+	 */
+	public JumpToLine open(final K key) throws IOException {
+		final long offset = seekOffset(key);
+		final FileInputStream fis = new FileInputStream(file_);
+		try {
+			fis.getChannel().position(offset);
+			final JumpToLine reader = new JumpToLine(fis, charset_);
+			if((index_ != null) && (offset < channel_.size())) {
+				reader.setLastLineRead(index_.getLineNumber(channel_,
+					offset));
+			}
+			return reader;
+		} catch (IOException e) {
+			IOUtils.closeQuietly(fis);
+			throw e;
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		channel_.close();
+	}
+	
+	private long lineStartAtOrAfter(final long position, final long size,
+		final byte[] scratch) throws IOException {
+		if(position == 0L) {
+			return 0L;
+		}
+		final long newline = indexOf(channel_, LF, position - 1L, size,
+			scratch);
+		return (newline < 0L) ? size : newline + 1L;
+	}
+	
+	private String readLineAt(final long start, final long size,
+		final byte[] scratch) throws IOException {
+		byte[] line = scratch;
+		int length = 0;
+		while(start + length < size) {
+			if(length == line.length) {
+				line = Arrays.copyOf(line, line.length * 2);
+			}
+			final ByteBuffer buffer = ByteBuffer.wrap(line, length,
+				(int)Math.min(line.length - length, size - start - length));
+			final int read = readFully(channel_, buffer, start + length);
+			if(read <= 0) {
+				break;
+			}
+			for(int i = length; i < length + read; i++) {
+				if(line[i] == LF) {
+					return decode(line, 0, stripCR(line, 0, i), charset_);
+				}
+			}
+			length += read;
+		}
+		return decode(line, 0, stripCR(line, 0, length), charset_);
+	}
+	
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.common.util.secure;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+
+/**
+ * A bounded buffer of pre-generated random byte[] chunks, kept full by
+ * a background daemon thread.  Callers take whole chunks without
+ * locking; when the buffer is empty they get nothing back and are
+ * expected to generate their own, synchronously.  If the generator
+ * ever fails, the filler thread stops and callers fall back to
+ * generating their own for good; whatever was still buffered is
+ * discarded.
+ */
+final class EntropyBuffer implements Runnable {
+	
+	private static final Logger logger__ = getLogger(EntropyBuffer.class);
+	
+	/**
+	 * Fills a chunk with random bytes.
+	 */
+	interface Generator {
+		public void nextBytes(final byte[] bytes);
+	}
+	
+	private static final String FILLER_THREAD_NAME =
+		"kolich-secure-random-filler";
+	
+	private final Generator generator_;
+	
+	private final int capacity_;
+	private final int chunkSize_;
+	
+	/**
+	 * The filler is woken up once the buffer drains below this level,
+	 * so it refills in batches instead of once per chunk taken.
+	 */
+	private final int lowWater_;
+	
+	private final ConcurrentLinkedQueue<byte[]> chunks_;
+	private final AtomicInteger level_;
+	
+	private final LongAdder hits_;
+	private final LongAdder fallbacks_;
+	
+	private final Thread filler_;
+	private volatile boolean running_;
+	
+	/**
+	 * Set when the generator threw and the filler thread gave up.
+	 */
+	private volatile boolean failed_;
+	
+	EntropyBuffer(final Generator generator, final int capacity,
+		final int chunkSize) {
+		generator_ = generator;
+		capacity_ = capacity;
+		chunkSize_ = chunkSize;
+		lowWater_ = capacity / 2;
+		chunks_ = new ConcurrentLinkedQueue<byte[]>();
+		level_ = new AtomicInteger(0);
+		hits_ = new LongAdder();
+		fallbacks_ = new LongAdder();
+		running_ = true;
+		filler_ = new Thread(this, FILLER_THREAD_NAME);
+		filler_.setDaemon(true);
+		filler_.start();
+	}
+	
+	/**
+	 * Takes a chunk of random bytes from the buffer, or returns null if
+	 * the buffer is empty.  Each chunk is handed out exactly once.
+	 */
+	byte[] take() {
+		final byte[] chunk = chunks_.poll();
+		if(chunk == null) {
+			fallbacks_.increment();
+			LockSupport.unpark(filler_);
+			return null;
+		}
+		hits_.increment();
+		if(level_.decrementAndGet() <= lowWater_) {
+			LockSupport.unpark(filler_);
+		}
+		return chunk;
+	}
+	
+	@Override
+	public void run() {
+		while(running_) {
+			if(level_.get() >= capacity_) {
+				// Full; sleep until a consumer drains us below the low
+				// water mark (or we're shut down).
+				LockSupport.park(this);
+				continue;
+			}
+			final byte[] chunk = new byte[chunkSize_];
+			try {
+				generator_.nextBytes(chunk);
+			} catch (RuntimeException e) {
+				// Nothing will ever refill the buffer, so every take()
+				// falls back to direct generation from here on.
+				logger__.error("Failed to generate random bytes, " +
+					"stopping the entropy buffer filler thread.", e);
+				failed_ = true;
+				running_ = false;
+				break;
+			}
+			chunks_.offer(chunk);
+			level_.incrementAndGet();
+		}
+		drain();
+	}
+	
+	/**
+	 * Discards every buffered chunk.  Polls them one at a time rather
+	 * than clearing the queue so the level stays in step with any
+	 * concurrent take().
+	 */
+	private void drain() {
+		while(chunks_.poll() != null) {
+			level_.decrementAndGet();
+		}
+	}
+	
+	void shutdown() {
+		running_ = false;
+		LockSupport.unpark(filler_);
+	}
+	
+	boolean isFailed() {
+		return failed_;
+	}
+	
+	int getLevel() {
+		return level_.get();
+	}
+	
+	int getCapacity() {
+		return capacity_;
+	}
+	
+	long getHits() {
+		return hits_.sum();
+	}
+	
+	long getFallbacks() {
+		return fallbacks_.sum();
+	}
+	
+}
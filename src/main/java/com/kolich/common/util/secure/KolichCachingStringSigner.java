@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.common.util.secure;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.kolich.common.util.secure.KolichStringSigner.StringSignerException;
+
+/**
+ * Puts a bounded cache of recently verified signatures in front of a
+ * {@link KolichStringSigner}, so the same signature presented over and
+ * over again is only cryptographically verified once in a while.
+ * 
+ * Entries are evicted once the cache is full (least recently used
+ * first) or once they've been in the cache for the given time-to-live,
+ * whichever comes first; lookups are concurrent, with the cache
+ * striped into independently locked segments.  Only signatures that
+ * verified successfully are ever cached, mapped to their payload;
+ * a signature that fails to verify is checked again every time.
+ */
+public final class KolichCachingStringSigner {
+	
+	private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+	
+	private final KolichStringSigner signer_;
+	
+	/**
+	 * Verified signature to payload.
+	 */
+	private final Cache<String,String> verified_;
+	
+	public KolichCachingStringSigner(final KolichStringSigner signer,
+		final long maximumSize, final long timeToLive, final TimeUnit unit,
+		final int concurrencyLevel) {
+		checkNotNull(signer, "String signer cannot be null.");
+		checkNotNull(unit, "Time-to-live unit cannot be null.");
+		signer_ = signer;
+		verified_ = CacheBuilder.newBuilder()
+			.maximumSize(maximumSize)
+			.expireAfterWrite(timeToLive, unit)
+			.concurrencyLevel(concurrencyLevel)
+			.recordStats()
+			.build();
+	}
+	
+	public KolichCachingStringSigner(final KolichStringSigner signer,
+		final long maximumSize, final long timeToLive, final TimeUnit unit) {
+		this(signer, maximumSize, timeToLive, unit,
+			DEFAULT_CONCURRENCY_LEVEL);
+	}
+	
+	/**
+	 * Signs the given payload; signing is never cached.
+	 * @see KolichStringSigner#sign(String)
+	 */
+	public final String sign(final String payload) {
+		return signer_.sign(payload);
+	}
+	
+	/**
+	 * Returns the payload of the given signature if it is valid, or null
+	 * if it is not, consulting the cache first.
+	 * @see KolichStringSigner#verify(String)
+	 */
+	public final String verify(final String signature) {
+		checkNotNull(signature, "Oops, the signature to verify " +
+			"cannot be null.");
+		String payload = verified_.getIfPresent(signature);
+		if(payload == null) {
+			payload = signer_.verify(signature);
+			if(payload != null) {
+				verified_.put(signature, payload);
+			}
+		}
+		return payload;
+	}
+	
+	/**
+	 * Returns the payload of the given signature if it is valid,
+	 * consulting the cache first, and throws a
+	 * {@link StringSignerException} if it is not.
+	 * @see KolichStringSigner#isValid(String)
+	 */
+	public final String isValid(final String signature) {
+		final String payload = verify(signature);
+		if(payload == null) {
+			throw new StringSignerException("Failed to validate input " +
+				"signature: " + signature);
+		}
+		return payload;
+	}
+	
+	/**
+	 * Drops every cached signature, e.g., after rotating the secret of
+	 * the underlying signer.
+	 */
+	public final void invalidateAll() {
+		verified_.invalidateAll();
+	}
+	
+	public final long getHitCount() {
+		return verified_.stats().hitCount();
+	}
+	
+	public final long getMissCount() {
+		return verified_.stats().missCount();
+	}
+	
+	public final long getEvictionCount() {
+		return verified_.stats().evictionCount();
+	}
+	
+	public final long getSize() {
+		return verified_.size();
+	}
+	
+	/**
+	 * Returns a snapshot of all of the cache's statistics.
+	 */
+	public final CacheStats getStats() {
+		return verified_.stats();
+	}
+	
+}
@@ -0,0 +1,306 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.common.util.secure;
+
+import com.kolich.common.util.secure.KolichStringSigner.StringSignerException;
+
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.kolich.common.DefaultCharacterEncoding.UTF_8_CHARSET;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.kolich.common.util.secure.KolichStringSigner.*;
+import static org.apache.commons.codec.binary.StringUtils.getBytesUtf8;
+import static org.apache.commons.codec.binary.StringUtils.newStringUtf8;
+
+/**
+ * Signs and validates payloads against a keyring of named secrets, so
+ * keys can be rotated without trying every old key on every token.
+ * 
+ * New tokens are always signed with the current signing key, and each
+ * token carries the id of the key that signed it; on verify the right
+ * pre-initialized key is found with a single hash lookup.  A token may
+ * also carry the time it was issued at and the time it expires at,
+ * which are checked before any cryptographic work is done.
+ * 
+ * A token is a version byte, a flags byte, the key id length and the
+ * UTF-8 key id, the optional issued-at and expires-at times (each 8
+ * bytes of epoch milliseconds), the payload length as an unsigned
+ * varint, the raw payload bytes and the raw signature, URL-safe base-64
+ * encoded once without padding.  The signature covers everything
+ * before it.
+ */
+public final class KolichKeyringSigner {
+	
+	/**
+	 * The leading version byte of the keyring token format.
+	 */
+	private static final byte KEYRING_VERSION = 0x02;
+	
+	private static final int FLAG_ISSUED_AT = 0x01;
+	private static final int FLAG_EXPIRES_AT = 0x02;
+	
+	private static final int MAX_KEY_ID_LENGTH = 0xFF;
+	
+	/**
+	 * Tokens issued up to this far in the future are still accepted, to
+	 * allow for clock skew between the signing and verifying hosts.
+	 */
+	private static final long MAX_CLOCK_SKEW_MS =
+		TimeUnit.MINUTES.toMillis(1L);
+	
+	/**
+	 * Key id to a signer holding that key's secret.
+	 */
+	private final Map<String,KolichStringSigner> keys_;
+	
+	private final String signingKeyId_;
+	private final KolichStringSigner signingKey_;
+	private final byte[] signingKeyIdBytes_;
+	
+	/**
+	 * Creates a keyring from the given map of key id to secret, signing
+	 * new tokens with the key named by the given signing key id.  Key
+	 * ids are short, at most 255 UTF-8 bytes.
+	 */
+	public KolichKeyringSigner(final String algorithmName,
+		final Map<String,String> secrets, final String signingKeyId)
+		throws NoSuchAlgorithmException {
+		checkNotNull(secrets, "Keyring secrets cannot be null.");
+		checkNotNull(signingKeyId, "Signing key id cannot be null.");
+		checkArgument(secrets.containsKey(signingKeyId), "Signing key " +
+			"id is not in the keyring: " + signingKeyId);
+		keys_ = new HashMap<String,KolichStringSigner>(secrets.size() * 2);
+		for(final Map.Entry<String,String> e : secrets.entrySet()) {
+			final int length = getBytesUtf8(e.getKey()).length;
+			checkArgument(length > 0 && length <= MAX_KEY_ID_LENGTH,
+				"Key id must be 1 to " + MAX_KEY_ID_LENGTH + " UTF-8 " +
+				"bytes long: " + e.getKey());
+			keys_.put(e.getKey(), new KolichStringSigner(algorithmName,
+				e.getValue()));
+		}
+		signingKeyId_ = signingKeyId;
+		signingKey_ = keys_.get(signingKeyId);
+		signingKeyIdBytes_ = getBytesUtf8(signingKeyId);
+	}
+	
+	public KolichKeyringSigner(final Map<String,String> secrets,
+		final String signingKeyId) throws NoSuchAlgorithmException {
+		this(ALGORITHM_HMAC_SHA_256, secrets, signingKeyId);
+	}
+	
+	/**
+	 * Signs the given payload bytes with the current signing key; the
+	 * token never expires.
+	 */
+	public final String sign(final byte[] payload) {
+		checkNotNull(payload, "Oops, the payload to sign cannot be null.");
+		return sign(payload, -1L, -1L);
+	}
+	
+	/**
+	 * Signs the UTF-8 bytes of the given payload String with the current
+	 * signing key; the token never expires.
+	 */
+	public final String sign(final String payload) {
+		checkNotNull(payload, "Oops, the payload string to sign cannot " +
+			"be null.");
+		return sign(getBytesUtf8(payload), -1L, -1L);
+	}
+	
+	/**
+	 * Signs the given payload bytes with the current signing key,
+	 * stamped as issued now and expiring after the given time-to-live.
+	 */
+	public final String sign(final byte[] payload, final long timeToLive,
+		final TimeUnit unit) {
+		checkNotNull(payload, "Oops, the payload to sign cannot be null.");
+		checkNotNull(unit, "Time-to-live unit cannot be null.");
+		checkArgument(timeToLive >= 0L, "Time-to-live cannot be " +
+			"negative: " + timeToLive);
+		final long now = System.currentTimeMillis();
+		// Huge time-to-lives saturate rather than wrap around into the
+		// past, which would make the token expired on arrival.
+		final long ttl = unit.toMillis(timeToLive);
+		return sign(payload, now, (ttl > Long.MAX_VALUE - now) ?
+			Long.MAX_VALUE : now + ttl);
+	}
+	
+	/**
+	 * Signs the UTF-8 bytes of the given payload String with the current
+	 * signing key, stamped as issued now and expiring after the given
+	 * time-to-live.
+	 */
+	public final String sign(final String payload, final long timeToLive,
+		final TimeUnit unit) {
+		checkNotNull(payload, "Oops, the payload string to sign cannot " +
+			"be null.");
+		return sign(getBytesUtf8(payload), timeToLive, unit);
+	}
+	
+	/**
+	 * Given a token, returns its payload bytes if it was signed by a key
+	 * in this keyring, has not expired and the signature matches, or
+	 * null otherwise.  Never throws for a bad token.
+	 */
+	public final byte[] verify(final String token) {
+		checkNotNull(token, "Oops, the token to verify cannot be null.");
+		if(!isUrlSafeBase64(token)) {
+			return null;
+		}
+		final byte[] decoded = COMPACT_DECODER.decode(token);
+		if((decoded.length < 4) || (decoded[0] != KEYRING_VERSION)) {
+			return null;
+		}
+		final int flags = decoded[1] & 0xFF;
+		final int keyIdLength = decoded[2] & 0xFF;
+		int position = 3 + keyIdLength;
+		if((flags & ~(FLAG_ISSUED_AT | FLAG_EXPIRES_AT)) != 0 ||
+			(keyIdLength == 0) || (position > decoded.length)) {
+			return null;
+		}
+		// Check the times first, cheaply rejecting stale tokens.
+		final long now = System.currentTimeMillis();
+		if((flags & FLAG_ISSUED_AT) != 0) {
+			if(position + 8 > decoded.length ||
+				getLong(decoded, position) > now + MAX_CLOCK_SKEW_MS) {
+				return null;
+			}
+			position += 8;
+		}
+		if((flags & FLAG_EXPIRES_AT) != 0) {
+			if(position + 8 > decoded.length ||
+				getLong(decoded, position) <= now) {
+				return null;
+			}
+			position += 8;
+		}
+		final KolichStringSigner key = keys_.get(
+			new String(decoded, 3, keyIdLength, UTF_8_CHARSET));
+		if(key == null) {
+			return null;
+		}
+		// Parse the payload length, an unsigned varint.
+		final int varintStart = position;
+		long payloadLength = 0L;
+		int shift = 0;
+		while(true) {
+			if((position >= decoded.length) ||
+				(position - varintStart >= MAX_VARINT_LENGTH)) {
+				return null;
+			}
+			final byte b = decoded[position++];
+			payloadLength |= (long)(b & 0x7F) << shift;
+			if((b & 0x80) == 0) {
+				break;
+			}
+			shift += 7;
+		}
+		final int signatureLength = key.macLength();
+		if(position + payloadLength + signatureLength != decoded.length) {
+			return null;
+		}
+		final int signedLength = position + (int)payloadLength;
+		if(!constantTimeEquals(key.mac(decoded, 0, signedLength), decoded,
+			signedLength)) {
+			return null;
+		}
+		final byte[] payload = new byte[(int)payloadLength];
+		System.arraycopy(decoded, position, payload, 0, payload.length);
+		return payload;
+	}
+	
+	/**
+	 * Given a token, returns its payload decoded as a UTF-8 String if it
+	 * verifies, or null if it does not.
+	 */
+	public final String verifyToString(final String token) {
+		final byte[] payload = verify(token);
+		return (payload != null) ? newStringUtf8(payload) : null;
+	}
+	
+	/**
+	 * Given a token, returns its payload decoded as a UTF-8 String if it
+	 * verifies, and throws a {@link StringSignerException} if it does not.
+	 */
+	public final String isValid(final String token) {
+		final String payload = verifyToString(token);
+		if(payload == null) {
+			throw new StringSignerException("Failed to validate input " +
+				"token: " + token);
+		}
+		return payload;
+	}
+	
+	/**
+	 * Returns the id of the key new tokens are signed with.
+	 */
+	public final String getSigningKeyId() {
+		return signingKeyId_;
+	}
+	
+	private final String sign(final byte[] payload, final long issuedAt,
+		final long expiresAt) {
+		final int flags = (issuedAt >= 0L) ?
+			(FLAG_ISSUED_AT | FLAG_EXPIRES_AT) : 0;
+		final int times = (flags != 0) ? 16 : 0;
+		final int headerLength = 3 + signingKeyIdBytes_.length + times;
+		final int signatureLength = signingKey_.macLength();
+		final byte[] token = new byte[headerLength +
+			varintLength(payload.length) + payload.length + signatureLength];
+		token[0] = KEYRING_VERSION;
+		token[1] = (byte)flags;
+		token[2] = (byte)signingKeyIdBytes_.length;
+		System.arraycopy(signingKeyIdBytes_, 0, token, 3,
+			signingKeyIdBytes_.length);
+		int position = 3 + signingKeyIdBytes_.length;
+		if(flags != 0) {
+			ByteBuffer.wrap(token, position, 16)
+				.putLong(issuedAt).putLong(expiresAt);
+			position += 16;
+		}
+		position = putVarint(token, position, payload.length);
+		System.arraycopy(payload, 0, token, position, payload.length);
+		position += payload.length;
+		System.arraycopy(signingKey_.mac(token, 0, position), 0, token,
+			position, signatureLength);
+		return COMPACT_ENCODER.encodeToString(token);
+	}
+	
+	private static final long getLong(final byte[] b, final int offset) {
+		long value = 0L;
+		for(int i = 0; i < 8; i++) {
+			value = (value << 8) | (b[offset + i] & 0xFF);
+		}
+		return value;
+	}
+	
+}
@@ -26,39 +26,204 @@
 
 package com.kolich.common.util.secure;
 
-import java.security.NoSuchAlgorithmException;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import java.io.Closeable;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
 
 import com.kolich.common.KolichCommonException;
 
-public final class KolichSecureRandom {
+/**
+ * A thread-safe source of secure random bytes and numbers.
+ * 
+ * By default a single SecureRandom is shared by all callers, guarded
+ * by its own lock.  Under heavy concurrent load that lock becomes a
+ * point of contention, so this class can instead be "striped" across
+ * several independent SecureRandom instances: each calling thread is
+ * mapped to one generator, and only threads mapped to the same
+ * generator ever contend with one another.
+ * 
+ * Security-wise, striping does not weaken anything.  Each generator is
+ * its own SecureRandom instance, self-seeded independently from the
+ * platform's entropy source on first use, and no state is shared
+ * between them; learning the output (or even the internal state) of
+ * one generator reveals nothing about the others.  Which generator a
+ * thread uses is derived from its thread id, which is not secret, but
+ * also has no bearing on the unpredictability of the output.
+ * 
+ * Optionally, {@link #getRandom()} can be served from a bounded buffer
+ * of pre-generated random bytes kept full by a background thread, which
+ * takes generation off the caller's critical path.  Callers take chunks
+ * from the buffer without locking and fall back to generating inline
+ * when it's empty.  Each buffered chunk is handed out exactly once, but
+ * note that buffered random bytes sit in the heap until they are used,
+ * and so would show up in a heap dump taken in the meantime.  Call
+ * {@link #close()} to stop the background thread.
+ * 
+ * The RNG algorithm (and provider) can be chosen at construction; the
+ * default remains SHA1PRNG.  SecureRandom instances seed themselves on
+ * first use, which on a freshly booted host with little entropy can
+ * block for seconds.  Construction never does this, but the first
+ * caller would, so the generators can optionally be seeded on a
+ * background thread as soon as they're created, and {@link #warmUp()}
+ * can be called to seed them eagerly, say during service startup.
+ */
+public final class KolichSecureRandom implements Closeable {
+	
+	/**
+	 * Our default Random Number Generator (RNG) algorithm.
+	 */
+	public static final String SHA1_PRNG = "SHA1PRNG";
 	
 	/**
-	 * Our Random Number Generator (RNG) algorithm.
+	 * The non-blocking native RNG (/dev/urandom) on Unix-like platforms.
 	 */
-	private static final String SHA1_PRNG = "SHA1PRNG";
+	public static final String NATIVE_PRNG_NON_BLOCKING =
+		"NativePRNGNonBlocking";
+	
+	/**
+	 * The NIST SP 800-90Ar1 DRBG, available on Java 9 and later.
+	 */
+	public static final String DRBG = "DRBG";
+	
+	private static final String SEEDER_THREAD_NAME =
+		"kolich-secure-random-seeder";
+	
+	/**
+	 * Size of the per-generator scratch buffer used to fill caller
+	 * buffers and to draw bulk numbers.
+	 */
+	private static final int SCRATCH_SIZE = 1024;
+	
+	/**
+	 * Number of values generated at a time for the bulk number streams.
+	 */
+	private static final int STREAM_CHUNK_SIZE = 1024;
+	
+	private static final long UNSIGNED_INT_MASK = 0xFFFFFFFFL;
 	
 	/**
 	 * The default number of random bits to fetch.
 	 */
 	private static final int DEFAULT_RANDOM_SIZE_BITS = 512;
 	
-	private final SecureRandom random_;
+	/**
+	 * By default, a single generator shared by all threads.
+	 */
+	private static final int DEFAULT_STRIPES = 1;
+	
+	/**
+	 * The independent generators; always a power of two in length
+	 * so a thread can be mapped to one with a simple mask.
+	 */
+	private final SecureRandom[] randoms_;
+	private final int mask_;
+	
+	/**
+	 * One scratch buffer per generator, only ever touched while
+	 * holding that generator's lock.
+	 */
+	private final byte[][] scratch_;
+	
 	private final int size_;
 	
-	public KolichSecureRandom(int randomSize) {
+	/**
+	 * Pre-generated random chunks for {@link #getRandom()}, or null if
+	 * buffering is disabled.
+	 */
+	private final EntropyBuffer buffer_;
+	
+	/**
+	 * @param algorithm the SecureRandom algorithm to use, or null for
+	 * the default ({@link #SHA1_PRNG})
+	 * @param provider the name of the security provider to get the
+	 * algorithm from, or null to use the first one that supports it
+	 * @param randomSize the number of random bits returned by
+	 * {@link #getRandom()}, must be a multiple of 8
+	 * @param stripes the number of independent generators to spread
+	 * callers across, rounded up to the next power of two; the number
+	 * of available processors is a good choice for heavily threaded
+	 * callers
+	 * @param bufferedChunks the number of {@link #getRandom()} results
+	 * to keep pre-generated in the background, or zero to disable
+	 * buffering
+	 * @param asyncSeed if true, seed every generator on a background
+	 * thread right away instead of on first use
+	 */
+	public KolichSecureRandom(String algorithm, String provider,
+		int randomSize, int stripes, int bufferedChunks, boolean asyncSeed) {
+		// Make sure the size of the random we're going to be asked
+		// to generate is a multiple of 8.
+		if((randomSize % Byte.SIZE) != 0) {
+			throw new IllegalArgumentException("Requested random size (" +
+				randomSize + ") is not a multiple of " + Byte.SIZE + ".");
+		}
+		if(stripes < 1) {
+			throw new IllegalArgumentException("Number of stripes (" +
+				stripes + ") must be greater than zero.");
+		}
+		if(bufferedChunks < 0) {
+			throw new IllegalArgumentException("Number of buffered chunks (" +
+				bufferedChunks + ") cannot be negative.");
+		}
+		final int count = (stripes == 1) ? 1 :
+			Integer.highestOneBit(stripes - 1) << 1;
+		final String name = (algorithm != null) ? algorithm : SHA1_PRNG;
 		try {
-			random_ = SecureRandom.getInstance(SHA1_PRNG);
-			// Make sure the size of the random we're going to be asked
-			// to generate is a multiple of 8.
-			if((randomSize % Byte.SIZE) != 0) {
-				throw new IllegalArgumentException("Requested random size (" +
-					randomSize + ") is not a multiple of " + Byte.SIZE + ".");
+			randoms_ = new SecureRandom[count];
+			scratch_ = new byte[count][SCRATCH_SIZE];
+			for(int i = 0; i < count; i++) {
+				// Note that getting an instance does not seed it.
+				randoms_[i] = (provider != null) ?
+					SecureRandom.getInstance(name, provider) :
+					SecureRandom.getInstance(name);
 			}
+			mask_ = count - 1;
 			size_ = randomSize;
-	    } catch (NoSuchAlgorithmException e) {
+	    } catch (GeneralSecurityException e) {
 	        throw new KolichCommonException(e);
 	    }
+		if(asyncSeed) {
+			final Thread seeder = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					warmUp();
+				}
+			}, SEEDER_THREAD_NAME);
+			seeder.setDaemon(true);
+			seeder.start();
+		}
+		buffer_ = (bufferedChunks > 0) ? new EntropyBuffer(
+			new EntropyBuffer.Generator() {
+				@Override
+				public void nextBytes(final byte[] bytes) {
+					generate(bytes);
+				}
+			}, bufferedChunks, size_/Byte.SIZE) : null;
+	}
+	
+	public KolichSecureRandom(int randomSize, int stripes,
+		int bufferedChunks) {
+		this(null, null, randomSize, stripes, bufferedChunks, false);
+	}
+	
+	public KolichSecureRandom(int randomSize, int stripes) {
+		this(randomSize, stripes, 0);
+	}
+	
+	public KolichSecureRandom(int randomSize) {
+		this(randomSize, DEFAULT_STRIPES);
 	}
 	
 	public KolichSecureRandom() {
@@ -70,11 +235,15 @@ public final class KolichSecureRandom {
 	 * @return
 	 */
 	public byte[] getRandom() {
-		final byte[] bytes = new byte[size_/Byte.SIZE];
-		synchronized(random_) {
-			// Get the next X random bits.
-			random_.nextBytes(bytes);
+		if(buffer_ != null) {
+			final byte[] buffered = buffer_.take();
+			if(buffered != null) {
+				return buffered;
+			}
+			// Buffer ran dry, generate inline.
 		}
+		final byte[] bytes = new byte[size_/Byte.SIZE];
+		generate(bytes);
 		return bytes;
 	}
 	
@@ -87,14 +256,368 @@ public final class KolichSecureRandom {
 	 */
 	public int getRandomInt(final int max) {
 		int random = -1;
-		synchronized(random_) {
-			random = random_.nextInt(max);
+		final SecureRandom stripe = stripe();
+		synchronized(stripe) {
+			random = stripe.nextInt(max);
 		}
 		return random;
 	}
 	
+	/**
+	 * Fills the given array with random bytes.
+	 */
+	public void nextBytes(final byte[] bytes) {
+		checkNotNull(bytes, "Byte array to fill cannot be null.");
+		generate(bytes);
+	}
+	
+	/**
+	 * Fills the given range of the given array with random bytes.  Only
+	 * as many bytes as the range needs are generated; a range that isn't
+	 * a multiple of the internal scratch buffer size allocates a single
+	 * array for its last, partial, chunk.
+	 */
+	public void nextBytes(final byte[] bytes, final int offset,
+		final int length) {
+		checkNotNull(bytes, "Byte array to fill cannot be null.");
+		checkPositionIndexes(offset, offset + length, bytes.length);
+		if((offset == 0) && (length == bytes.length)) {
+			generate(bytes);
+			return;
+		}
+		final int stripe = stripeIndex();
+		final SecureRandom random = randoms_[stripe];
+		final byte[] scratch = scratch_[stripe];
+		synchronized(random) {
+			for(int done = 0; done < length; done += scratch.length) {
+				final byte[] chunk = chunk(scratch, length - done);
+				random.nextBytes(chunk);
+				System.arraycopy(chunk, 0, bytes, offset + done,
+					chunk.length);
+			}
+		}
+	}
+	
+	/**
+	 * Fills the remaining bytes of the given buffer with random bytes,
+	 * advancing its position to its limit.
+	 */
+	public void nextBytes(final ByteBuffer buffer) {
+		checkNotNull(buffer, "Byte buffer to fill cannot be null.");
+		if(buffer.hasArray()) {
+			nextBytes(buffer.array(), buffer.arrayOffset() +
+				buffer.position(), buffer.remaining());
+			((Buffer)buffer).position(buffer.limit());
+			return;
+		}
+		final int stripe = stripeIndex();
+		final SecureRandom random = randoms_[stripe];
+		final byte[] scratch = scratch_[stripe];
+		synchronized(random) {
+			while(buffer.hasRemaining()) {
+				final byte[] chunk = chunk(scratch, buffer.remaining());
+				random.nextBytes(chunk);
+				buffer.put(chunk);
+			}
+		}
+	}
+	
+	/**
+	 * Fills the given range of the given array with uniformly
+	 * distributed ints between origin (inclusive) and bound (exclusive).
+	 * Uses Lemire's nearly divisionless method, which is unbiased and
+	 * only rarely has to reject and redraw a value.  The whole range is
+	 * filled under a single acquisition of the calling thread's
+	 * generator lock.
+	 */
+	public void nextInts(final int[] ints, final int offset, final int length,
+		final int origin, final int bound) {
+		checkNotNull(ints, "Int array to fill cannot be null.");
+		checkPositionIndexes(offset, offset + length, ints.length);
+		if(origin >= bound) {
+			throw new IllegalArgumentException("Bound (" + bound + ") must " +
+				"be greater than origin (" + origin + ").");
+		}
+		final long range = (long)bound - (long)origin; // 1 to 2^32-1
+		final int stripe = stripeIndex();
+		final SecureRandom random = randoms_[stripe];
+		final RandomWords words = new RandomWords(random, scratch_[stripe]);
+		synchronized(random) {
+			for(int i = offset, end = offset + length; i < end; i++) {
+				long m = (words.nextInt() & UNSIGNED_INT_MASK) * range;
+				long low = m & UNSIGNED_INT_MASK;
+				if(low < range) {
+					// Values below 2^32 mod range would bias the result.
+					final long threshold = (UNSIGNED_INT_MASK + 1L - range) %
+						range;
+					while(low < threshold) {
+						m = (words.nextInt() & UNSIGNED_INT_MASK) * range;
+						low = m & UNSIGNED_INT_MASK;
+					}
+				}
+				ints[i] = (int)(origin + (m >>> Integer.SIZE));
+			}
+		}
+	}
+	
+	/**
+	 * Fills the given range of the given array with uniformly
+	 * distributed longs between origin (inclusive) and bound (exclusive),
+	 * using Lemire's method; see {@link #nextInts}.
+	 */
+	public void nextLongs(final long[] longs, final int offset,
+		final int length, final long origin, final long bound) {
+		checkNotNull(longs, "Long array to fill cannot be null.");
+		checkPositionIndexes(offset, offset + length, longs.length);
+		if(origin >= bound) {
+			throw new IllegalArgumentException("Bound (" + bound + ") must " +
+				"be greater than origin (" + origin + ").");
+		}
+		// Treated as unsigned, so ranges wider than Long.MAX_VALUE work.
+		final long range = bound - origin;
+		final int stripe = stripeIndex();
+		final SecureRandom random = randoms_[stripe];
+		final RandomWords words = new RandomWords(random, scratch_[stripe]);
+		synchronized(random) {
+			for(int i = offset, end = offset + length; i < end; i++) {
+				long x = words.nextLong();
+				long low = x * range;
+				if(Long.compareUnsigned(low, range) < 0) {
+					final long threshold = Long.remainderUnsigned(-range,
+						range);
+					while(Long.compareUnsigned(low, threshold) < 0) {
+						x = words.nextLong();
+						low = x * range;
+					}
+				}
+				longs[i] = origin + unsignedMultiplyHigh(x, range);
+			}
+		}
+	}
+	
+	/**
+	 * Returns a stream of the given number of uniformly distributed ints
+	 * between origin (inclusive) and bound (exclusive).  Values are
+	 * generated in chunks, one generator lock acquisition per chunk.
+	 */
+	public IntStream ints(final long count, final int origin,
+		final int bound) {
+		if(count < 0L) {
+			throw new IllegalArgumentException("Stream size cannot be " +
+				"negative.");
+		}
+		if(origin >= bound) {
+			throw new IllegalArgumentException("Bound (" + bound + ") must " +
+				"be greater than origin (" + origin + ").");
+		}
+		return StreamSupport.intStream(new Spliterators.AbstractIntSpliterator(
+			count, Spliterator.SIZED | Spliterator.NONNULL |
+			Spliterator.IMMUTABLE) {
+			private final int[] chunk_ = new int[(int)Math.min(
+				STREAM_CHUNK_SIZE, Math.max(1L, count))];
+			private long remaining_ = count;
+			private int index_ = chunk_.length;
+			@Override
+			public boolean tryAdvance(final IntConsumer action) {
+				if(remaining_ <= 0L) {
+					return false;
+				}
+				if(index_ == chunk_.length) {
+					nextInts(chunk_, 0, chunk_.length, origin, bound);
+					index_ = 0;
+				}
+				remaining_ -= 1L;
+				action.accept(chunk_[index_++]);
+				return true;
+			}
+		}, false);
+	}
+	
+	/**
+	 * Returns a stream of the given number of uniformly distributed longs
+	 * between origin (inclusive) and bound (exclusive).  Values are
+	 * generated in chunks, one generator lock acquisition per chunk.
+	 */
+	public LongStream longs(final long count, final long origin,
+		final long bound) {
+		if(count < 0L) {
+			throw new IllegalArgumentException("Stream size cannot be " +
+				"negative.");
+		}
+		if(origin >= bound) {
+			throw new IllegalArgumentException("Bound (" + bound + ") must " +
+				"be greater than origin (" + origin + ").");
+		}
+		return StreamSupport.longStream(new Spliterators.AbstractLongSpliterator(
+			count, Spliterator.SIZED | Spliterator.NONNULL |
+			Spliterator.IMMUTABLE) {
+			private final long[] chunk_ = new long[(int)Math.min(
+				STREAM_CHUNK_SIZE, Math.max(1L, count))];
+			private long remaining_ = count;
+			private int index_ = chunk_.length;
+			@Override
+			public boolean tryAdvance(final LongConsumer action) {
+				if(remaining_ <= 0L) {
+					return false;
+				}
+				if(index_ == chunk_.length) {
+					nextLongs(chunk_, 0, chunk_.length, origin, bound);
+					index_ = 0;
+				}
+				remaining_ -= 1L;
+				action.accept(chunk_[index_++]);
+				return true;
+			}
+		}, false);
+	}
+	
 	public int getRandomSize() {
 		return size_;
 	}
+	
+	public int getStripes() {
+		return randoms_.length;
+	}
+	
+	/**
+	 * Returns the number of pre-generated chunks currently waiting in
+	 * the buffer, or zero if buffering is disabled.
+	 */
+	public int getBufferLevel() {
+		return (buffer_ != null) ? buffer_.getLevel() : 0;
+	}
+	
+	public int getBufferCapacity() {
+		return (buffer_ != null) ? buffer_.getCapacity() : 0;
+	}
+	
+	/**
+	 * Returns the number of {@link #getRandom()} calls served from the
+	 * buffer.
+	 */
+	public long getBufferHits() {
+		return (buffer_ != null) ? buffer_.getHits() : 0L;
+	}
+	
+	/**
+	 * Returns the number of {@link #getRandom()} calls that found the
+	 * buffer empty and had to generate their random bytes inline.
+	 */
+	public long getBufferFallbacks() {
+		return (buffer_ != null) ? buffer_.getFallbacks() : 0L;
+	}
+
+	/**
+	 * Returns true if the background filler thread hit an error and
+	 * stopped, in which case every {@link #getRandom()} call generates
+	 * its random bytes inline from now on.
+	 */
+	public boolean isBufferFailed() {
+		return (buffer_ != null) && buffer_.isFailed();
+	}
+
+	/**
+	 * Seeds every generator that hasn't been seeded yet, blocking until
+	 * they all are.  Safe to call any number of times, from any thread,
+	 * and concurrently with the background seeder.
+	 */
+	public void warmUp() {
+		final byte[] bytes = new byte[1];
+		for(final SecureRandom random : randoms_) {
+			synchronized(random) {
+				// Forces the generator to self-seed, if it hasn't yet.
+				random.nextBytes(bytes);
+			}
+		}
+	}
+	
+	public String getAlgorithm() {
+		return randoms_[0].getAlgorithm();
+	}
+	
+	/**
+	 * Stops the background buffer filling thread, if any.  Calls to
+	 * {@link #getRandom()} keep working afterwards, generating inline.
+	 */
+	@Override
+	public void close() {
+		if(buffer_ != null) {
+			buffer_.shutdown();
+		}
+	}
+	
+	private void generate(final byte[] bytes) {
+		final SecureRandom random = stripe();
+		synchronized(random) {
+			// Get the next X random bits.
+			random.nextBytes(bytes);
+		}
+	}
+	
+	/**
+	 * Returns the generator the calling thread is mapped to.  Thread ids
+	 * are handed out sequentially, so neighbouring threads land on
+	 * different stripes.
+	 */
+	private SecureRandom stripe() {
+		return randoms_[stripeIndex()];
+	}
+	
+	private int stripeIndex() {
+		return (int)(Thread.currentThread().getId() & mask_);
+	}
+	
+	/**
+	 * Returns the scratch buffer if at least that many bytes are still
+	 * needed, otherwise a new array of exactly the number needed, so
+	 * that no more random bytes are generated than are used.
+	 */
+	private static final byte[] chunk(final byte[] scratch,
+		final int needed) {
+		return (needed >= scratch.length) ? scratch : new byte[needed];
+	}
+	
+	/**
+	 * Returns the high 64-bits of the unsigned 128-bit product of the
+	 * given values.
+	 */
+	private static final long unsignedMultiplyHigh(final long x,
+		final long y) {
+		final long x0 = x & UNSIGNED_INT_MASK, x1 = x >>> 32;
+		final long y0 = y & UNSIGNED_INT_MASK, y1 = y >>> 32;
+		final long t = (x1 * y0) + ((x0 * y0) >>> 32);
+		final long w1 = (x0 * y1) + (t & UNSIGNED_INT_MASK);
+		return (x1 * y1) + (t >>> 32) + (w1 >>> 32);
+	}
+	
+	/**
+	 * Hands out random ints and longs from a scratch buffer, refilling
+	 * it from the given generator as needed.  Callers must hold the
+	 * generator's lock.
+	 */
+	private static final class RandomWords {
+		private final SecureRandom random_;
+		private final byte[] scratch_;
+		private int position_;
+		public RandomWords(final SecureRandom random, final byte[] scratch) {
+			random_ = random;
+			scratch_ = scratch;
+			position_ = scratch.length;
+		}
+		public int nextInt() {
+			if(position_ + 4 > scratch_.length) {
+				random_.nextBytes(scratch_);
+				position_ = 0;
+			}
+			final byte[] b = scratch_;
+			final int p = position_;
+			position_ += 4;
+			return ((b[p] & 0xFF) << 24) | ((b[p + 1] & 0xFF) << 16) |
+				((b[p + 2] & 0xFF) << 8) | (b[p + 3] & 0xFF);
+		}
+		public long nextLong() {
+			return ((long)nextInt() << 32) | (nextInt() & UNSIGNED_INT_MASK);
+		}
+	}
 
 }
@@ -27,39 +27,103 @@
 package com.kolich.common.util.secure;
 
 import com.kolich.common.KolichCommonException;
+import com.kolich.common.functional.either.Either;
+import com.kolich.common.util.concurrent.BaseWorker;
+import com.kolich.common.util.concurrent.ThreadRunner;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.regex.Pattern;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.kolich.common.functional.either.Left.left;
+import static com.kolich.common.functional.either.Right.right;
 import static com.kolich.common.util.crypt.Base64Utils.*;
 import static org.apache.commons.codec.binary.StringUtils.getBytesUtf8;
 import static org.apache.commons.codec.binary.StringUtils.newStringUtf8;
 
+/**
+ * Signs and validates String payloads with a secret.
+ * 
+ * Given a {@link MessageDigest} algorithm name (the default is SHA-256)
+ * the signature is a digest of the payload followed by the secret,
+ * computed under a lock on a single shared digest.  Given an HMAC
+ * algorithm name, like {@link #ALGORITHM_HMAC_SHA_256}, the signature
+ * is a keyed MAC of the payload instead; each thread gets its own
+ * {@link Mac} with the key already initialized, so signing threads
+ * never contend with one another.
+ * 
+ * Besides the original "Base64(Base64(payload)|Base64(signature))"
+ * token format, a compact binary format is available through
+ * {@link #signCompact(byte[])} and {@link #verifyCompact(String)}: a
+ * version byte, the payload length as an unsigned varint, the raw
+ * payload bytes and the raw signature, URL-safe base-64 encoded once
+ * without padding.  The signature covers everything before it.
+ * 
+ * Large batches of payloads or signatures can be signed or verified
+ * at once with {@link #signAll(List)} and {@link #verifyAll(List)},
+ * which split the batch across worker threads, each with its own
+ * digest or MAC and its own reusable encode buffers.
+ */
 public final class KolichStringSigner {
 	
 	private static final String SIGNATURE_DELIMITER = "|";
+	private static final byte SIGNATURE_DELIMITER_BYTE = '|';
+	
+	/**
+	 * The leading version byte of the compact binary token format.
+	 */
+	private static final byte COMPACT_VERSION = 0x01;
+	
+	/**
+	 * A payload length is an unsigned varint of at most 5 bytes.
+	 */
+	static final int MAX_VARINT_LENGTH = 5;
+	
+	static final Base64.Encoder COMPACT_ENCODER =
+		Base64.getUrlEncoder().withoutPadding();
+	static final Base64.Decoder COMPACT_DECODER =
+		Base64.getUrlDecoder();
 	private static final String ALGORITHM_SHA_256 = "SHA-256";
-		
+	
+	/**
+	 * Any algorithm name starting with this prefix (HmacSHA256,
+	 * HmacSHA512, ...) selects HMAC signing.
+	 */
+	private static final String HMAC_PREFIX = "Hmac";
+	
+	public static final String ALGORITHM_HMAC_SHA_256 = "HmacSHA256";
+	
 	/**
-	 * The secret key used during signing.
+	 * Batches smaller than this, per worker, aren't worth a thread.
 	 */
-	private final String secret_;
+	private static final int MIN_BATCH_PER_WORKER = 256;
 	
 	/**
-	 * Digest used to generate a signature.
+	 * Computes the raw signature bytes over a payload.
 	 */
-	private final MessageDigest digest_;
+	private final SigningEngine engine_;
 	
 	public KolichStringSigner(String algorithmName, String secret)
 		throws NoSuchAlgorithmException {
 		checkNotNull(secret, "Signature secret cannot be null.");
-		secret_ = secret;
-		digest_ = MessageDigest.getInstance((algorithmName != null) ?
-			// If we were given an algorithm by name, attempt to use it.
-			// Otherwise, just use the default.
-			algorithmName : ALGORITHM_SHA_256);
+		// If we were given an algorithm by name, attempt to use it.
+		// Otherwise, just use the default.
+		final String algorithm = (algorithmName != null) ? algorithmName :
+			ALGORITHM_SHA_256;
+		engine_ = algorithm.startsWith(HMAC_PREFIX) ?
+			new HmacEngine(algorithm, secret) :
+			new DigestEngine(MessageDigest.getInstance(algorithm), secret);
 	}
 	
 	public KolichStringSigner(String secret)
@@ -77,14 +141,8 @@ public final class KolichStringSigner {
 	public final String sign(final String payload) {
 		checkNotNull(payload, "Oops, the payload string to sign cannot " +
 			"be null.");
-		final String signed;
-		synchronized(digest_) {
-			signed = newStringUtf8(encodeBase64(
-				digest_.digest(getBytesUtf8(
-					// Relies on string concatenation. The payload really
-					// shouldn't be huge but who knows.
-					payload + secret_))));
-		}
+		final String signed = newStringUtf8(encodeBase64(
+			engine_.sign(payload)));
 		return encodeBase64URLSafe(
 			// We have to base-64 encode the payload in the event that it
 			// might contain a "|" which is our default signature delimiter.
@@ -99,43 +157,654 @@ public final class KolichStringSigner {
 	 * Given a signature to validate, returns the String payload contained in
 	 * the signature if the signature matches the signed payload.  The
 	 * signed payload is most often an email address, but can be any String.
+	 * Throws a {@link StringSignerException} if the signature is invalid.
 	 */
 	public final String isValid(final String signature) {
 		checkNotNull(signature, "Oops, the signature to validate " +
 			"cannot be null.");
-		String certified = null;
-		try {
-			// Extract the payload from the signature, may be null
-			// if no payload was found (e.g., a bogus signature).
-			final String payload = extractPayload(signature);
-			// Resign the extracted payload and make sure it matches
-			// the input signature.  If it matches, when we know the
-			// signature string and the contents inside came from us!
-			if(sign(payload).equals(signature)) {
-				certified = payload;
-			} else {
-				throw new StringSignerException("Signed payload (" + payload +
-					") does not match signature (" + signature + ")");
-			}
-		} catch (Exception e) {
+		final String certified = verify(signature);
+		if(certified == null) {
 			throw new StringSignerException("Failed to validate input " +
-				"signature: " + signature, e);
+				"signature: " + signature);
 		}
 		return certified;
 	}
-			
+	
+	/**
+	 * Given a signature to validate, returns the String payload contained
+	 * in the signature if the signature matches the signed payload, or
+	 * null if it does not.  The signature is parsed once, only the raw
+	 * signature bytes are recomputed, and they are compared in constant
+	 * time.  Never throws for a bad signature, so it's cheap to call on
+	 * untrusted input.
+	 */
+	public final String verify(final String signature) {
+		checkNotNull(signature, "Oops, the signature to verify " +
+			"cannot be null.");
+		return verify(engine_, signature);
+	}
+	
+	/**
+	 * Signs each of the given payloads, spreading the work across one
+	 * worker thread per available processor.  Returns a list of results
+	 * in the same order as the payloads; a payload that could not be
+	 * signed, like a null one, has a {@link StringSignerException} in
+	 * its place.  Each signature is identical to {@link #sign(String)}.
+	 */
+	public final List<Either<StringSignerException,String>> signAll(
+		final List<String> payloads) {
+		return signAll(payloads, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Signs each of the given payloads, spreading the work across at
+	 * most the given number of worker threads.
+	 * @see #signAll(List)
+	 */
+	public final List<Either<StringSignerException,String>> signAll(
+		final List<String> payloads, final int threads) {
+		checkNotNull(payloads, "Oops, the payloads to sign cannot be null.");
+		return batch(payloads, threads, true);
+	}
+	
+	/**
+	 * Verifies each of the given signatures, spreading the work across
+	 * one worker thread per available processor.  Returns a list of
+	 * results in the same order as the signatures; each is either the
+	 * signed payload, as from {@link #isValid(String)}, or the
+	 * {@link StringSignerException} explaining why it's invalid.
+	 */
+	public final List<Either<StringSignerException,String>> verifyAll(
+		final List<String> signatures) {
+		return verifyAll(signatures,
+			Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Verifies each of the given signatures, spreading the work across
+	 * at most the given number of worker threads.
+	 * @see #verifyAll(List)
+	 */
+	public final List<Either<StringSignerException,String>> verifyAll(
+		final List<String> signatures, final int threads) {
+		checkNotNull(signatures, "Oops, the signatures to verify cannot " +
+			"be null.");
+		return batch(signatures, threads, false);
+	}
+	
+	private final List<Either<StringSignerException,String>> batch(
+		final List<String> inputs, final int threads, final boolean sign) {
+		checkArgument(threads > 0, "Thread count must be positive: " +
+			threads);
+		final int size = inputs.size();
+		// Workers fill in disjoint slots; awaiting the runner's latch
+		// makes their writes visible to this thread.
+		final List<Either<StringSignerException,String>> results =
+			new ArrayList<Either<StringSignerException,String>>(
+				Collections.<Either<StringSignerException,String>>nCopies(
+					size, null));
+		final int workers = Math.min(threads,
+			Math.max(1, size / MIN_BATCH_PER_WORKER));
+		if(workers == 1) {
+			// Not worth a thread, just do it here.
+			new BatchWorker(inputs, results, 0, size, sign, engine_).batch();
+			return results;
+		}
+		final List<BaseWorker> batch = new ArrayList<BaseWorker>(workers);
+		for(int i = 0; i < workers; i++) {
+			final int from = (int)((long)size * i / workers);
+			final int to = (int)((long)size * (i + 1) / workers);
+			batch.add(new BatchWorker(inputs, results, from, to, sign,
+				engine_.copy()));
+		}
+		final ThreadRunner runner = new ThreadRunner(batch);
+		runner.start();
+		runner.await();
+		if(!runner.wasSuccessful()) {
+			throw new StringSignerException("One or more batch workers " +
+				"failed to complete.");
+		}
+		return results;
+	}
+	
+	private static final String verify(final SigningEngine engine,
+		final String signature) {
+		// The signature is a base-64 encoded mess of "payload|signature".
+		// Only accept the exact encoding sign() makes, so that a token
+		// can't be altered (flipped padding bits, stray characters) and
+		// still verify.
+		if(!isUrlSafeBase64(signature)) {
+			return null;
+		}
+		final byte[] token = decodeBase64ToBytes(signature);
+		final int delimiter = indexOfDelimiter(token);
+		if((delimiter < 0) || !isBase64(token, 0, delimiter) ||
+			!isBase64(token, delimiter + 1, token.length)) {
+			return null;
+		}
+		final byte[] payload = decodeBase64(Arrays.copyOfRange(token, 0,
+			delimiter));
+		final byte[] signed = decodeBase64(Arrays.copyOfRange(token,
+			delimiter + 1, token.length));
+		if(!MessageDigest.isEqual(engine.sign(payload), signed)) {
+			return null;
+		}
+		return newStringUtf8(payload);
+	}
+	
+	/**
+	 * Signs the given payload bytes, returning a compact binary token.
+	 */
+	public final String signCompact(final byte[] payload) {
+		checkNotNull(payload, "Oops, the payload to sign cannot be null.");
+		return signCompact(payload, 0, payload.length);
+	}
+	
+	/**
+	 * Signs the remaining bytes of the given payload buffer, returning a
+	 * compact binary token.  The buffer's position is not changed.
+	 */
+	public final String signCompact(final ByteBuffer payload) {
+		checkNotNull(payload, "Oops, the payload to sign cannot be null.");
+		if(payload.hasArray()) {
+			return signCompact(payload.array(), payload.arrayOffset() +
+				payload.position(), payload.remaining());
+		}
+		final byte[] bytes = new byte[payload.remaining()];
+		payload.duplicate().get(bytes);
+		return signCompact(bytes, 0, bytes.length);
+	}
+	
+	/**
+	 * Signs the UTF-8 bytes of the given payload String, returning a
+	 * compact binary token.
+	 */
+	public final String signCompact(final String payload) {
+		checkNotNull(payload, "Oops, the payload string to sign cannot " +
+			"be null.");
+		return signCompact(getBytesUtf8(payload));
+	}
+	
+	/**
+	 * Given a compact binary token, returns its payload bytes if the
+	 * token's signature matches, or null if it does not.  Never throws
+	 * for a bad token.
+	 */
+	public final byte[] verifyCompact(final String token) {
+		final ByteBuffer payload = verifyCompactToBuffer(token);
+		if(payload == null) {
+			return null;
+		}
+		final byte[] bytes = new byte[payload.remaining()];
+		payload.get(bytes);
+		return bytes;
+	}
+	
 	/**
-	 * Given a signature string, extract the relevant payload.
-	 * Returns null if no payload could be extracted from within the
-	 * signature.
+	 * Given a compact binary token, returns its payload as a read-only
+	 * view over the decoded token if the token's signature matches, or
+	 * null if it does not.  Never throws for a bad token.
 	 */
-	private static final String extractPayload(final String signature) {
-		checkNotNull(signature, "Oops, the signature to extract a payload " +
-			"from cannot be null.");
-		// The signature is a base-64 encoded mess of "payload|signature"
-		final String[] tokens = decodeBase64(signature).split(
-			Pattern.quote(SIGNATURE_DELIMITER));
-		return (tokens.length >= 1) ? decodeBase64(tokens[0]) : null;
+	public final ByteBuffer verifyCompactToBuffer(final String token) {
+		checkNotNull(token, "Oops, the token to verify cannot be null.");
+		if(!isUrlSafeBase64(token)) {
+			return null;
+		}
+		final byte[] decoded = COMPACT_DECODER.decode(token);
+		final int signatureLength = engine_.length();
+		if((decoded.length < 2 + signatureLength) ||
+			(decoded[0] != COMPACT_VERSION)) {
+			return null;
+		}
+		// Parse the payload length, an unsigned varint after the version.
+		long payloadLength = 0L;
+		int position = 1, shift = 0;
+		while(true) {
+			if((position >= decoded.length) ||
+				(position > MAX_VARINT_LENGTH)) {
+				return null;
+			}
+			final byte b = decoded[position++];
+			payloadLength |= (long)(b & 0x7F) << shift;
+			if((b & 0x80) == 0) {
+				break;
+			}
+			shift += 7;
+		}
+		if(position + payloadLength + signatureLength != decoded.length) {
+			return null;
+		}
+		final int signedLength = position + (int)payloadLength;
+		final byte[] expected = engine_.sign(decoded, 0, signedLength);
+		if(!constantTimeEquals(expected, decoded, signedLength)) {
+			return null;
+		}
+		return ByteBuffer.wrap(decoded, position, (int)payloadLength)
+			.slice().asReadOnlyBuffer();
+	}
+	
+	/**
+	 * Given a compact binary token, returns its payload decoded as a
+	 * UTF-8 String if the token's signature matches, or null if it
+	 * does not.
+	 */
+	public final String verifyCompactToString(final String token) {
+		final byte[] payload = verifyCompact(token);
+		return (payload != null) ? newStringUtf8(payload) : null;
+	}
+	
+	/**
+	 * Computes the raw signature over the given range of bytes, for
+	 * other token formats in this package.
+	 */
+	final byte[] mac(final byte[] data, final int offset, final int length) {
+		return engine_.sign(data, offset, length);
+	}
+	
+	/**
+	 * The length, in bytes, of the raw signatures from {@link #mac}.
+	 */
+	final int macLength() {
+		return engine_.length();
+	}
+	
+	private final String signCompact(final byte[] payload, final int offset,
+		final int length) {
+		final int signatureLength = engine_.length();
+		final byte[] token = new byte[1 + varintLength(length) + length +
+			signatureLength];
+		token[0] = COMPACT_VERSION;
+		int position = putVarint(token, 1, length);
+		System.arraycopy(payload, offset, token, position, length);
+		position += length;
+		final byte[] signature = engine_.sign(token, 0, position);
+		System.arraycopy(signature, 0, token, position, signatureLength);
+		return COMPACT_ENCODER.encodeToString(token);
+	}
+	
+	static final int varintLength(final int value) {
+		int length = 1;
+		for(int v = value >>> 7; v != 0; v >>>= 7) {
+			length++;
+		}
+		return length;
+	}
+	
+	/**
+	 * Writes the given value as an unsigned varint into the given array
+	 * at the given position, returning the position just past it.
+	 */
+	static final int putVarint(final byte[] dst, int position,
+		final int value) {
+		int remaining = value;
+		while((remaining & ~0x7F) != 0) {
+			dst[position++] = (byte)((remaining & 0x7F) | 0x80);
+			remaining >>>= 7;
+		}
+		dst[position++] = (byte)remaining;
+		return position;
+	}
+	
+	/**
+	 * Compares the given expected signature against the same number of
+	 * bytes in the given token, starting at the given offset, in time
+	 * that does not depend on where they differ.
+	 */
+	static final boolean constantTimeEquals(final byte[] expected,
+		final byte[] token, final int offset) {
+		int result = 0;
+		for(int i = 0; i < expected.length; i++) {
+			result |= expected[i] ^ token[offset + i];
+		}
+		return result == 0;
+	}
+	
+	/**
+	 * Returns true if the given String is unpadded URL-safe base-64 in
+	 * its one canonical form: only URL-safe characters, a length that
+	 * can be decoded, and no stray bits set in the last character.  So
+	 * decoding it can never fail, and no other String decodes to the
+	 * same bytes.
+	 */
+	static final boolean isUrlSafeBase64(final String s) {
+		final int length = s.length();
+		if((length % 4) == 1) {
+			return false;
+		}
+		int value = 0;
+		for(int i = 0; i < length; i++) {
+			value = base64Value(s.charAt(i), true);
+			if(value < 0) {
+				return false;
+			}
+		}
+		return hasZeroTrailingBits(value, length % 4);
+	}
+	
+	/**
+	 * Returns true if the given range of bytes is padded, standard
+	 * base-64 in its one canonical form: only standard characters, a
+	 * multiple of 4 long, '=' only as the last one or two characters,
+	 * and no stray bits set in the last character before them.
+	 */
+	private static final boolean isBase64(final byte[] b, final int from,
+		final int to) {
+		if(((to - from) % 4) != 0) {
+			return false;
+		}
+		int padding = 0;
+		while((padding < 2) && (to - padding > from) &&
+			(b[to - padding - 1] == '=')) {
+			padding++;
+		}
+		int value = 0;
+		for(int i = from; i < to - padding; i++) {
+			value = base64Value(b[i], false);
+			if(value < 0) {
+				return false;
+			}
+		}
+		return hasZeroTrailingBits(value, (4 - padding) % 4);
+	}
+	
+	/**
+	 * Returns the 6-bit value of the given base-64 character in the
+	 * URL-safe or standard alphabet, or -1 if it isn't one.
+	 */
+	private static final int base64Value(final int c, final boolean urlSafe) {
+		if((c >= 'A') && (c <= 'Z')) {
+			return c - 'A';
+		} else if((c >= 'a') && (c <= 'z')) {
+			return c - 'a' + 26;
+		} else if((c >= '0') && (c <= '9')) {
+			return c - '0' + 52;
+		} else if(c == (urlSafe ? '-' : '+')) {
+			return 62;
+		} else if(c == (urlSafe ? '_' : '/')) {
+			return 63;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Returns true if the bits of the given last character of a base-64
+	 * quantum that don't make it into a decoded byte are all zero.  The
+	 * remainder is the number of characters in that final quantum; a
+	 * full quantum (zero) has no leftover bits.
+	 */
+	private static final boolean hasZeroTrailingBits(final int value,
+		final int remainder) {
+		if(remainder == 2) {
+			return (value & 0x0F) == 0;
+		} else if(remainder == 3) {
+			return (value & 0x03) == 0;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns the index of the one and only delimiter in the given
+	 * decoded token, or -1 if there isn't exactly one.  Neither
+	 * base-64 encoded half of a token can contain the delimiter.
+	 */
+	private static final int indexOfDelimiter(final byte[] token) {
+		int index = -1;
+		for(int i = 0; i < token.length; i++) {
+			if(token[i] == SIGNATURE_DELIMITER_BYTE) {
+				if(index >= 0) {
+					return -1;
+				}
+				index = i;
+			}
+		}
+		return index;
+	}
+	
+	/**
+	 * Computes the raw signature of a payload.
+	 */
+	private static abstract class SigningEngine {
+		
+		public byte[] sign(final String payload) {
+			return sign(payload, getBytesUtf8(payload));
+		}
+		
+		/**
+		 * Signs the given payload String, whose UTF-8 bytes have already
+		 * been encoded by the caller.
+		 */
+		public byte[] sign(final String payload, final byte[] utf8) {
+			return sign(utf8);
+		}
+		
+		public byte[] sign(final byte[] payload) {
+			return sign(payload, 0, payload.length);
+		}
+		
+		public abstract byte[] sign(final byte[] data, final int offset,
+			final int length);
+		
+		/**
+		 * The length, in bytes, of the raw signatures this engine makes.
+		 */
+		public abstract int length();
+		
+		/**
+		 * Returns an engine with the same secret that one worker thread
+		 * can use without contending with any other thread.
+		 */
+		public abstract SigningEngine copy();
+		
+	}
+	
+	/**
+	 * Signs with a digest of the payload followed by the secret, under
+	 * a lock on a single shared digest.
+	 */
+	private static final class DigestEngine extends SigningEngine {
+		private final MessageDigest digest_;
+		private final String secret_;
+		private final byte[] secretBytes_;
+		public DigestEngine(final MessageDigest digest, final String secret) {
+			digest_ = digest;
+			secret_ = secret;
+			secretBytes_ = getBytesUtf8(secret);
+		}
+		@Override
+		public byte[] sign(final String payload, final byte[] utf8) {
+			final int length = payload.length();
+			if((length > 0) &&
+				Character.isHighSurrogate(payload.charAt(length - 1))) {
+				// A dangling surrogate could pair up with the start of
+				// the secret, so encode the two together.
+				synchronized(digest_) {
+					return digest_.digest(getBytesUtf8(payload + secret_));
+				}
+			}
+			return sign(utf8);
+		}
+		@Override
+		public byte[] sign(final byte[] data, final int offset,
+			final int length) {
+			synchronized(digest_) {
+				// Same as digesting the UTF-8 bytes of payload + secret,
+				// without building the concatenated String.
+				digest_.update(data, offset, length);
+				return digest_.digest(secretBytes_);
+			}
+		}
+		@Override
+		public int length() {
+			return digest_.getDigestLength();
+		}
+		@Override
+		public SigningEngine copy() {
+			try {
+				synchronized(digest_) {
+					return new DigestEngine((MessageDigest)digest_.clone(),
+						secret_);
+				}
+			} catch (CloneNotSupportedException e) {
+				try {
+					return new DigestEngine(MessageDigest.getInstance(
+						digest_.getAlgorithm(), digest_.getProvider()),
+						secret_);
+				} catch (NoSuchAlgorithmException n) {
+					throw new StringSignerException("Failed to copy " +
+						"digest: " + digest_.getAlgorithm(), n);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Signs with an HMAC of the payload keyed with the secret.  Each
+	 * thread gets its own pre-initialized Mac, cloned from a prototype,
+	 * so no lock is held while signing.
+	 */
+	private static final class HmacEngine extends SigningEngine {
+		private final Mac prototype_;
+		private final ThreadLocal<Mac> macs_;
+		public HmacEngine(final String algorithm, final String secret)
+			throws NoSuchAlgorithmException {
+			prototype_ = Mac.getInstance(algorithm);
+			try {
+				prototype_.init(new SecretKeySpec(getBytesUtf8(secret),
+					algorithm));
+			} catch (InvalidKeyException e) {
+				throw new StringSignerException("Invalid signing secret " +
+					"for algorithm: " + algorithm, e);
+			}
+			macs_ = new ThreadLocal<Mac>() {
+				@Override
+				protected Mac initialValue() {
+					return newMac();
+				}
+			};
+		}
+		@Override
+		public byte[] sign(final byte[] data, final int offset,
+			final int length) {
+			final Mac mac = macs_.get();
+			// doFinal() resets the Mac, ready for the next payload.
+			mac.update(data, offset, length);
+			return mac.doFinal();
+		}
+		@Override
+		public int length() {
+			return prototype_.getMacLength();
+		}
+		@Override
+		public SigningEngine copy() {
+			// Every thread already gets its own Mac.
+			return this;
+		}
+		private Mac newMac() {
+			try {
+				synchronized(prototype_) {
+					return (Mac)prototype_.clone();
+				}
+			} catch (CloneNotSupportedException e) {
+				throw new StringSignerException("Provider for " +
+					prototype_.getAlgorithm() + " does not support " +
+					"cloning a Mac.", e);
+			}
+		}
+	}
+	
+	/**
+	 * Signs or verifies one contiguous slice of a batch, writing each
+	 * result into the same slot as its input.
+	 */
+	private static final class BatchWorker extends BaseWorker {
+		private final List<String> inputs_;
+		private final List<Either<StringSignerException,String>> results_;
+		private final int from_;
+		private final int to_;
+		private final boolean sign_;
+		private final SigningEngine engine_;
+		/**
+		 * The "Base64(payload)|Base64(signature)" token, and its URL-safe
+		 * encoding, reused from one payload to the next.
+		 */
+		private byte[] token_;
+		private byte[] encoded_;
+		public BatchWorker(final List<String> inputs,
+			final List<Either<StringSignerException,String>> results,
+			final int from, final int to, final boolean sign,
+			final SigningEngine engine) {
+			inputs_ = inputs;
+			results_ = results;
+			from_ = from;
+			to_ = to;
+			sign_ = sign;
+			engine_ = engine;
+			token_ = new byte[0];
+			encoded_ = new byte[0];
+		}
+		@Override
+		public void myRun() throws Exception {
+			batch();
+		}
+		@Override
+		public String getWorkerName() {
+			return "string-signer-batch-" + from_ + "-" + to_;
+		}
+		public void batch() {
+			for(int i = from_; i < to_; i++) {
+				final String input = inputs_.get(i);
+				Either<StringSignerException,String> result;
+				try {
+					result = sign_ ? sign(input) : verify(input);
+				} catch (StringSignerException e) {
+					result = left(e);
+				} catch (RuntimeException e) {
+					result = left(new StringSignerException("Failed to " +
+						(sign_ ? "sign payload" : "validate signature") +
+						" at index " + i, e));
+				}
+				results_.set(i, result);
+			}
+		}
+		private Either<StringSignerException,String> sign(
+			final String payload) {
+			if(payload == null) {
+				return left(new StringSignerException("Oops, the payload " +
+					"string to sign cannot be null."));
+			}
+			final byte[] utf8 = getBytesUtf8(payload);
+			final byte[] signature = engine_.sign(payload, utf8);
+			final int tokenLength = encodedLength(utf8.length) + 1 +
+				encodedLength(signature.length);
+			if(token_.length < tokenLength) {
+				token_ = new byte[tokenLength];
+			}
+			int length = encodeBase64(utf8, 0, utf8.length, token_, 0);
+			token_[length++] = SIGNATURE_DELIMITER_BYTE;
+			length += encodeBase64(signature, 0, signature.length, token_,
+				length);
+			if(encoded_.length < encodedLengthURLSafe(length)) {
+				encoded_ = new byte[encodedLengthURLSafe(length)];
+			}
+			final int encodedLength = encodeBase64URLSafe(token_, 0, length,
+				encoded_, 0);
+			return right(new String(encoded_, 0, encodedLength,
+				StandardCharsets.ISO_8859_1));
+		}
+		private Either<StringSignerException,String> verify(
+			final String signature) {
+			if(signature == null) {
+				return left(new StringSignerException("Oops, the " +
+					"signature to verify cannot be null."));
+			}
+			final String certified = KolichStringSigner.verify(engine_,
+				signature);
+			if(certified == null) {
+				return left(new StringSignerException("Failed to " +
+					"validate input signature: " + signature));
+			}
+			return right(certified);
+		}
 	}
 	
 	/**
@@ -0,0 +1,213 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.kolich.common.util.secure;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.kolich.common.util.crypt.Base32Utils.encodeBase32Standard;
+import static com.kolich.common.util.crypt.Base32Utils.encodedLengthStandard;
+import static com.kolich.common.util.crypt.Base64Utils.encodeBase64URLSafe;
+import static com.kolich.common.util.crypt.Base64Utils.encodedLengthURLSafe;
+
+import java.util.UUID;
+
+/**
+ * Generates random tokens and identifiers from a
+ * {@link KolichSecureRandom}.  Random bytes are encoded straight into a
+ * char[] array, with no intermediate byte[] encoding or charset
+ * conversion, and the bulk methods draw the random bytes for every
+ * token in a single call.
+ */
+public final class KolichTokenGenerator {
+	
+	/**
+	 * Crockford's Base32 alphabet, as used by ULIDs.
+	 */
+	private static final char[] CROCKFORD_ALPHABET =
+		"0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+	
+	private static final int UUID_BYTES = 16;
+	private static final int ULID_LENGTH = 26;
+	private static final int ULID_RANDOM_BYTES = 10;
+	
+	private final KolichSecureRandom random_;
+	
+	/**
+	 * The number of random bytes behind each token.
+	 */
+	private final int tokenBytes_;
+	
+	public KolichTokenGenerator(final KolichSecureRandom random,
+		final int tokenBytes) {
+		checkNotNull(random, "Secure random cannot be null.");
+		if(tokenBytes < 1) {
+			throw new IllegalArgumentException("Token size (" + tokenBytes +
+				") must be greater than zero.");
+		}
+		random_ = random;
+		tokenBytes_ = tokenBytes;
+	}
+	
+	/**
+	 * Creates a generator whose tokens carry as many random bytes as
+	 * the given secure random's {@link KolichSecureRandom#getRandom()}.
+	 */
+	public KolichTokenGenerator(final KolichSecureRandom random) {
+		this(random, random.getRandomSize() / Byte.SIZE);
+	}
+	
+	/**
+	 * Returns a random token, URL-safe base-64 encoded without padding.
+	 */
+	public String nextToken() {
+		return nextTokens(1)[0];
+	}
+	
+	/**
+	 * Returns the given number of random tokens, URL-safe base-64
+	 * encoded without padding.
+	 */
+	public String[] nextTokens(final int count) {
+		final byte[] bytes = nextBytes(count);
+		final char[] chars = new char[encodedLengthURLSafe(tokenBytes_)];
+		final String[] tokens = new String[count];
+		for(int i = 0; i < count; i++) {
+			encodeBase64URLSafe(bytes, i * tokenBytes_, tokenBytes_, chars, 0);
+			tokens[i] = new String(chars);
+		}
+		return tokens;
+	}
+	
+	/**
+	 * Returns a random token, Base32 (RFC 4648) encoded without padding.
+	 */
+	public String nextBase32Token() {
+		return nextBase32Tokens(1)[0];
+	}
+	
+	/**
+	 * Returns the given number of random tokens, Base32 (RFC 4648)
+	 * encoded without padding.
+	 */
+	public String[] nextBase32Tokens(final int count) {
+		final byte[] bytes = nextBytes(count);
+		final char[] chars = new char[encodedLengthStandard(tokenBytes_)];
+		final String[] tokens = new String[count];
+		for(int i = 0; i < count; i++) {
+			encodeBase32Standard(bytes, i * tokenBytes_, tokenBytes_, chars, 0);
+			tokens[i] = new String(chars);
+		}
+		return tokens;
+	}
+	
+	/**
+	 * Returns a random, version 4 UUID.
+	 */
+	public UUID randomUUID() {
+		final byte[] bytes = new byte[UUID_BYTES];
+		random_.nextBytes(bytes);
+		long msb = getLong(bytes, 0), lsb = getLong(bytes, 8);
+		msb = (msb & ~0xF000L) | 0x4000L; // Version 4
+		lsb = (lsb & ~(0xC000000000000000L)) | 0x8000000000000000L; // IETF
+		return new UUID(msb, lsb);
+	}
+	
+	/**
+	 * Returns a time-ordered, version 7 UUID: a 48-bit Unix timestamp in
+	 * milliseconds followed by 74 random bits.  UUIDs created in different
+	 * milliseconds sort in creation order; those created within the same
+	 * millisecond are in random order relative to one another.
+	 */
+	public UUID timeOrderedUUID() {
+		final byte[] bytes = new byte[UUID_BYTES];
+		random_.nextBytes(bytes);
+		final long millis = System.currentTimeMillis();
+		final long msb = (millis << 16) | 0x7000L | // Version 7
+			(getLong(bytes, 0) & 0x0FFFL);
+		final long lsb = (getLong(bytes, 8) & ~(0xC000000000000000L)) |
+			0x8000000000000000L; // IETF variant
+		return new UUID(msb, lsb);
+	}
+	
+	/**
+	 * Returns a ULID: a 48-bit Unix timestamp in milliseconds followed by
+	 * 80 random bits, as 26 characters of Crockford's Base32.  Like
+	 * {@link #timeOrderedUUID()}, ULIDs sort by creation time down to the
+	 * millisecond.
+	 */
+	public String nextULID() {
+		final byte[] bytes = new byte[ULID_RANDOM_BYTES];
+		random_.nextBytes(bytes);
+		final char[] chars = new char[ULID_LENGTH];
+		// 48-bits of timestamp into the first 10 chars, then 40 random
+		// bits into each group of 8 after that, 5 bits per char.
+		encodeCrockford(System.currentTimeMillis(), chars, 0, 10);
+		encodeCrockford(getLong(bytes, 0, 5), chars, 10, 8);
+		encodeCrockford(getLong(bytes, 5, 5), chars, 18, 8);
+		return new String(chars);
+	}
+	
+	private byte[] nextBytes(final int count) {
+		if(count < 1) {
+			throw new IllegalArgumentException("Token count (" + count +
+				") must be greater than zero.");
+		}
+		if(count > Integer.MAX_VALUE / tokenBytes_) {
+			throw new IllegalArgumentException("Token count (" + count +
+				") is too large for " + tokenBytes_ + "-byte tokens.");
+		}
+		final byte[] bytes = new byte[count * tokenBytes_];
+		random_.nextBytes(bytes);
+		return bytes;
+	}
+	
+	/**
+	 * Encodes the low order 5 * length bits of the given value into the
+	 * given char[] array with Crockford's Base32 alphabet, most
+	 * significant bits first.
+	 */
+	private static void encodeCrockford(long value, final char[] chars,
+		final int offset, final int length) {
+		for(int i = offset + length - 1; i >= offset; i--) {
+			chars[i] = CROCKFORD_ALPHABET[(int)(value & 0x1F)];
+			value >>>= 5;
+		}
+	}
+	
+	private static long getLong(final byte[] bytes, final int offset) {
+		return getLong(bytes, offset, 8);
+	}
+	
+	private static long getLong(final byte[] bytes, final int offset,
+		final int length) {
+		long value = 0L;
+		for(int i = offset; i < offset + length; i++) {
+			value = (value << 8) | (bytes[i] & 0xFF);
+		}
+		return value;
+	}
+	
+}
@@ -0,0 +1,250 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.kolich.common.util.secure;
+
+import static com.kolich.common.util.secure.KolichStringSigner.ALGORITHM_HMAC_SHA_256;
+import static com.kolich.common.util.secure.KolichStringSignerTest.trailingBitVariants;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.kolich.common.util.secure.KolichStringSigner.StringSignerException;
+
+public final class KolichKeyringSignerTest {
+	
+	private static final String PAYLOAD = "user@example.com";
+	
+	@Test
+	public void signAndVerifyRoundTrip() throws Exception {
+		final KolichKeyringSigner signer = keyring("k1", "k1");
+		for(final String payload : new String[]{"", "a", "ab", "abc",
+			PAYLOAD, "ünïçødé"}) {
+			assertEquals(payload, signer.verifyToString(signer.sign(payload)));
+			assertEquals(payload, signer.isValid(signer.sign(payload,
+				1L, TimeUnit.HOURS)));
+		}
+		final byte[] bytes = new byte[300];
+		for(int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte)i;
+		}
+		assertArrayEquals(bytes, signer.verify(signer.sign(bytes)));
+		assertArrayEquals(bytes, signer.verify(signer.sign(bytes, 1L,
+			TimeUnit.MINUTES)));
+	}
+	
+	@Test
+	public void verifiesTokensFromOlderKeysAfterRotation() throws Exception {
+		final String old = keyring("k1", "k1").sign(PAYLOAD);
+		final KolichKeyringSigner rotated = keyring("k2", "k1", "k2");
+		assertEquals("k2", rotated.getSigningKeyId());
+		assertEquals(PAYLOAD, rotated.verifyToString(old));
+		assertEquals(PAYLOAD, rotated.verifyToString(rotated.sign(PAYLOAD)));
+		// Once the old key is retired, its tokens no longer verify.
+		final KolichKeyringSigner retired = keyring("k2", "k2");
+		assertNull(retired.verify(old));
+		assertEquals(PAYLOAD, retired.verifyToString(
+			rotated.sign(PAYLOAD)));
+	}
+	
+	@Test
+	public void rejectsUnknownKey() throws Exception {
+		assertNull(keyring("k1", "k1").verify(keyring("k2", "k2")
+			.sign(PAYLOAD)));
+		// Same key id, but a different secret behind it.
+		final Map<String,String> secrets = new HashMap<String,String>();
+		secrets.put("k1", "another secret");
+		assertNull(new KolichKeyringSigner(secrets, "k1").verify(
+			keyring("k1", "k1").sign(PAYLOAD)));
+	}
+	
+	@Test
+	public void rejectsExpiredToken() throws Exception {
+		final KolichKeyringSigner signer = keyring("k1", "k1");
+		// Expires the very millisecond it's issued.
+		assertNull(signer.verify(signer.sign(PAYLOAD, 0L,
+			TimeUnit.MILLISECONDS)));
+		final long now = System.currentTimeMillis();
+		assertNull(signer.verify(token("k1", now - 2000L, now - 1000L)));
+		assertEquals(PAYLOAD, signer.verifyToString(token("k1", now - 2000L,
+			now + 60000L)));
+	}
+	
+	@Test
+	public void rejectsTokenIssuedInTheFuture() throws Exception {
+		final KolichKeyringSigner signer = keyring("k1", "k1");
+		final long now = System.currentTimeMillis();
+		// A little clock skew is fine, much more is not.
+		assertEquals(PAYLOAD, signer.verifyToString(token("k1",
+			now + 1000L, now + 60000L)));
+		assertNull(signer.verify(token("k1", now + TimeUnit.HOURS.toMillis(
+			1L), now + TimeUnit.HOURS.toMillis(2L))));
+	}
+	
+	@Test
+	public void saturatesHugeTimeToLive() throws Exception {
+		final KolichKeyringSigner signer = keyring("k1", "k1");
+		assertEquals(PAYLOAD, signer.verifyToString(signer.sign(PAYLOAD,
+			Long.MAX_VALUE, TimeUnit.DAYS)));
+		assertEquals(PAYLOAD, signer.verifyToString(signer.sign(PAYLOAD,
+			Long.MAX_VALUE, TimeUnit.MILLISECONDS)));
+	}
+	
+	@Test
+	public void rejectsTamperedToken() throws Exception {
+		final KolichKeyringSigner signer = keyring("k1", "k1");
+		final String token = signer.sign(PAYLOAD, 1L, TimeUnit.HOURS);
+		final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ" +
+			"abcdefghijklmnopqrstuvwxyz0123456789-_";
+		for(int i = 0; i < token.length(); i++) {
+			for(int j = 0; j < alphabet.length(); j++) {
+				final char c = alphabet.charAt(j);
+				if(c == token.charAt(i)) {
+					continue;
+				}
+				final String tampered = token.substring(0, i) + c +
+					token.substring(i + 1);
+				assertNull(tampered, signer.verify(tampered));
+			}
+		}
+	}
+	
+	@Test
+	public void rejectsTruncatedToken() throws Exception {
+		final KolichKeyringSigner signer = keyring("k1", "k1");
+		for(final String token : new String[]{signer.sign(PAYLOAD),
+			signer.sign(PAYLOAD, 1L, TimeUnit.HOURS)}) {
+			for(int i = 0; i < token.length(); i++) {
+				assertNull(signer.verify(token.substring(0, i)));
+			}
+			final byte[] decoded = Base64.getUrlDecoder().decode(token);
+			for(int i = 0; i < decoded.length; i++) {
+				final byte[] truncated = new byte[i];
+				System.arraycopy(decoded, 0, truncated, 0, i);
+				assertNull(signer.verify(encode(truncated)));
+			}
+		}
+	}
+	
+	@Test
+	public void rejectsNonCanonicalEncoding() throws Exception {
+		final KolichKeyringSigner signer = keyring("k1", "k1");
+		// Cover every length of final quantum: 0, 2 and 3 characters.
+		for(final String payload : new String[]{"a", "ab", "abc"}) {
+			final String token = signer.sign(payload);
+			assertEquals(payload, signer.verifyToString(token));
+			for(final String variant : trailingBitVariants(token, true)) {
+				assertNull(variant, signer.verify(variant));
+			}
+			assertNull(signer.verify(token + "="));
+			assertNull(signer.verify(token + " "));
+		}
+	}
+	
+	@Test
+	public void rejectsUnknownVersionAndFlags() throws Exception {
+		final KolichKeyringSigner signer = keyring("k1", "k1");
+		final byte[] decoded = Base64.getUrlDecoder().decode(
+			signer.sign(PAYLOAD));
+		final byte[] wrongVersion = decoded.clone();
+		wrongVersion[0] = 0x01;
+		assertNull(signer.verify(encode(wrongVersion)));
+		final byte[] unknownFlag = decoded.clone();
+		unknownFlag[1] = 0x04;
+		assertNull(signer.verify(encode(unknownFlag)));
+		// And a compact token from the plain signer isn't a keyring one.
+		assertNull(signer.verify(new KolichStringSigner(
+			ALGORITHM_HMAC_SHA_256, secret("k1")).signCompact(PAYLOAD)));
+	}
+	
+	@Test(expected = StringSignerException.class)
+	public void isValidThrowsOnInvalidToken() throws Exception {
+		keyring("k1", "k1").isValid("bogus");
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void signingKeyMustBeInTheKeyring() throws Exception {
+		keyring("k2", "k1");
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void keyIdCannotBeEmpty() throws Exception {
+		keyring("", "");
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void keyIdCannotBeLongerThan255Bytes() throws Exception {
+		final String id = new String(new char[128]).replace('\0', 'é');
+		keyring(id, id);
+	}
+	
+	private static KolichKeyringSigner keyring(final String signingKeyId,
+		final String... keyIds) throws Exception {
+		final Map<String,String> secrets = new HashMap<String,String>();
+		for(final String keyId : keyIds) {
+			secrets.put(keyId, secret(keyId));
+		}
+		return new KolichKeyringSigner(secrets, signingKeyId);
+	}
+	
+	private static String secret(final String keyId) {
+		return "secret for " + keyId;
+	}
+	
+	/**
+	 * Builds a keyring token by hand, with arbitrary issued-at and
+	 * expires-at times, following the documented token layout.
+	 */
+	private static String token(final String keyId, final long issuedAt,
+		final long expiresAt) throws Exception {
+		final byte[] id = keyId.getBytes(UTF_8);
+		final byte[] payload = PAYLOAD.getBytes(UTF_8);
+		final ByteBuffer token = ByteBuffer.allocate(3 + id.length + 16 + 1 +
+			payload.length + 32);
+		token.put((byte)0x02).put((byte)0x03).put((byte)id.length).put(id)
+			.putLong(issuedAt).putLong(expiresAt)
+			.put((byte)payload.length).put(payload);
+		final KolichStringSigner key = new KolichStringSigner(
+			ALGORITHM_HMAC_SHA_256, secret(keyId));
+		token.put(key.mac(token.array(), 0, token.position()));
+		return encode(token.array());
+	}
+	
+	private static String encode(final byte[] token) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+	}
+	
+}
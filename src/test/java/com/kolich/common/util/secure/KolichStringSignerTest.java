@@ -0,0 +1,437 @@
+/**
+ * Copyright (c) 2015 Mark S. Kolich
+ * http://mark.koli.ch
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.kolich.common.util.secure;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.kolich.common.functional.either.Either;
+import com.kolich.common.util.secure.KolichStringSigner.StringSignerException;
+
+public final class KolichStringSignerTest {
+	
+	private static final String SECRET = "foobar";
+	
+	private static final String URL_SAFE_ALPHABET =
+		"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+	
+	@Test
+	public void signAndVerifyRoundTrip() throws Exception {
+		for(final KolichStringSigner signer : signers()) {
+			for(final String payload : new String[]{"", "a", "ab", "abc",
+				"user@example.com", "pipe|in|payload", "ünïçødé"}) {
+				final String token = signer.sign(payload);
+				assertEquals(payload, signer.verify(token));
+				assertEquals(payload, signer.isValid(token));
+			}
+		}
+	}
+	
+	@Test
+	public void rejectsTokenFromAnotherSecret() throws Exception {
+		final String token = new KolichStringSigner("other").sign("payload");
+		assertNull(new KolichStringSigner(SECRET).verify(token));
+	}
+	
+	@Test
+	public void rejectsTamperedToken() throws Exception {
+		final KolichStringSigner signer = new KolichStringSigner(SECRET);
+		final String token = signer.sign("user@example.com");
+		for(int i = 0; i < token.length(); i++) {
+			for(int j = 0; j < URL_SAFE_ALPHABET.length(); j++) {
+				final char c = URL_SAFE_ALPHABET.charAt(j);
+				if(c == token.charAt(i)) {
+					continue;
+				}
+				final String tampered = token.substring(0, i) + c +
+					token.substring(i + 1);
+				assertNull(tampered, signer.verify(tampered));
+			}
+		}
+	}
+	
+	@Test
+	public void rejectsTruncatedToken() throws Exception {
+		final KolichStringSigner signer = new KolichStringSigner(SECRET);
+		final String token = signer.sign("user@example.com");
+		for(int i = 0; i < token.length(); i++) {
+			assertNull(signer.verify(token.substring(0, i)));
+		}
+	}
+	
+	@Test
+	public void rejectsInsertedCharacters() throws Exception {
+		final KolichStringSigner signer = new KolichStringSigner(SECRET);
+		final String token = signer.sign("user@example.com");
+		for(int i = 0; i <= token.length(); i++) {
+			for(final String junk : new String[]{"=", " ", "\n", ".", "+",
+				"/", "AAAA"}) {
+				final String altered = token.substring(0, i) + junk +
+					token.substring(i);
+				assertNull(altered, signer.verify(altered));
+			}
+		}
+	}
+	
+	@Test
+	public void rejectsNonCanonicalOuterEncoding() throws Exception {
+		final KolichStringSigner signer = new KolichStringSigner(SECRET);
+		// Cover every length of final quantum: 0, 2 and 3 characters.
+		for(final String payload : new String[]{"a", "ab", "abc", "abcd",
+			"abcde", "user@example.com"}) {
+			final String token = signer.sign(payload);
+			assertEquals(payload, signer.verify(token));
+			for(final String variant : trailingBitVariants(token, true)) {
+				assertNull(variant, signer.verify(variant));
+			}
+			// Padding the outer token is not what sign() produces either.
+			if((token.length() % 4) != 0) {
+				assertNull(signer.verify(token + "=="
+					.substring(0, 4 - (token.length() % 4))));
+			}
+		}
+	}
+	
+	@Test
+	public void rejectsNonCanonicalInnerEncoding() throws Exception {
+		final KolichStringSigner signer = new KolichStringSigner(SECRET);
+		final String payload = "abcd";
+		final String token = signer.sign(payload);
+		final String inner = new String(Base64.getUrlDecoder().decode(token),
+			UTF_8);
+		final int delimiter = inner.indexOf('|');
+		final String encodedPayload = inner.substring(0, delimiter);
+		final String encodedSignature = inner.substring(delimiter + 1);
+		// Sanity check, rebuilding the token from its parts verifies.
+		assertEquals(payload, signer.verify(wrap(encodedPayload,
+			encodedSignature)));
+		// Unpadded halves.
+		assertNull(signer.verify(wrap(encodedPayload.replace("=", ""),
+			encodedSignature)));
+		assertNull(signer.verify(wrap(encodedPayload,
+			encodedSignature.replace("=", ""))));
+		// Stray bits in the last character before the padding.
+		for(final String variant : trailingBitVariants(encodedPayload,
+			false)) {
+			assertNull(signer.verify(wrap(variant, encodedSignature)));
+		}
+		for(final String variant : trailingBitVariants(encodedSignature,
+			false)) {
+			assertNull(signer.verify(wrap(encodedPayload, variant)));
+		}
+		// Junk inside a half.
+		assertNull(signer.verify(wrap(" " + encodedPayload,
+			encodedSignature)));
+		assertNull(signer.verify(wrap(encodedPayload + "====",
+			encodedSignature)));
+	}
+	
+	@Test
+	public void rejectsUrlSafeInnerEncoding() throws Exception {
+		final KolichStringSigner signer = new KolichStringSigner(SECRET);
+		// Standard base-64 of "???" is "Pz8/".
+		final String payload = "???";
+		final String inner = new String(Base64.getUrlDecoder().decode(
+			signer.sign(payload)), UTF_8);
+		final int delimiter = inner.indexOf('|');
+		assertEquals("Pz8/", inner.substring(0, delimiter));
+		assertNull(signer.verify(wrap("Pz8_", inner.substring(
+			delimiter + 1))));
+	}
+	
+	@Test(expected = StringSignerException.class)
+	public void isValidThrowsOnInvalidToken() throws Exception {
+		new KolichStringSigner(SECRET).isValid("bogus");
+	}
+	
+	@Test(expected = NullPointerException.class)
+	public void verifyRejectsNullToken() throws Exception {
+		new KolichStringSigner(SECRET).verify(null);
+	}
+	
+	@Test
+	public void compactRoundTrip() throws Exception {
+		final Random random = new Random(42L);
+		for(final KolichStringSigner signer : signers()) {
+			// Lengths either side of each varint size boundary.
+			for(final int length : new int[]{0, 1, 2, 3, 127, 128, 16383,
+				16384, 100000}) {
+				final byte[] payload = new byte[length];
+				random.nextBytes(payload);
+				final String token = signer.signCompact(payload);
+				assertArrayEquals(payload, signer.verifyCompact(token));
+				final ByteBuffer view = signer.verifyCompactToBuffer(token);
+				assertTrue(view.isReadOnly());
+				assertEquals(ByteBuffer.wrap(payload), view);
+			}
+		}
+	}
+	
+	@Test
+	public void compactSignsBuffersAndStrings() throws Exception {
+		final KolichStringSigner signer = new KolichStringSigner(SECRET);
+		final byte[] payload = "user@example.com".getBytes(UTF_8);
+		final String expected = signer.signCompact(payload);
+		// A slice of a larger heap buffer, with a non-zero array offset.
+		final ByteBuffer heap = ByteBuffer.allocate(payload.length + 8);
+		heap.position(3);
+		final ByteBuffer slice = heap.slice();
+		slice.put(payload).flip();
+		assertEquals(expected, signer.signCompact(slice));
+		assertEquals(0, slice.position());
+		final ByteBuffer direct = ByteBuffer.allocateDirect(payload.length);
+		direct.put(payload).flip();
+		assertEquals(expected, signer.signCompact(direct));
+		assertEquals(0, direct.position());
+		assertEquals(expected, signer.signCompact("user@example.com"));
+		assertEquals("user@example.com",
+			signer.verifyCompactToString(expected));
+	}
+	
+	@Test
+	public void compactRejectsTamperedToken() throws Exception {
+		final KolichStringSigner signer = new KolichStringSigner(SECRET);
+		final String token = signer.signCompact("user@example.com");
+		for(int i = 0; i < token.length(); i++) {
+			for(int j = 0; j < URL_SAFE_ALPHABET.length(); j++) {
+				final char c = URL_SAFE_ALPHABET.charAt(j);
+				if(c == token.charAt(i)) {
+					continue;
+				}
+				final String tampered = token.substring(0, i) + c +
+					token.substring(i + 1);
+				assertNull(tampered, signer.verifyCompact(tampered));
+			}
+		}
+		assertNull(new KolichStringSigner("other").verifyCompact(token));
+	}
+	
+	@Test
+	public void compactRejectsTruncatedToken() throws Exception {
+		final KolichStringSigner signer = new KolichStringSigner(SECRET);
+		final String token = signer.signCompact("user@example.com");
+		for(int i = 0; i < token.length(); i++) {
+			assertNull(signer.verifyCompact(token.substring(0, i)));
+		}
+	}
+	
+	@Test
+	public void compactRejectsNonCanonicalEncoding() throws Exception {
+		final KolichStringSigner signer = new KolichStringSigner(SECRET);
+		// Cover every length of final quantum: 0, 2 and 3 characters.
+		for(final String payload : new String[]{"a", "ab", "abc"}) {
+			final String token = signer.signCompact(payload);
+			assertEquals(payload, signer.verifyCompactToString(token));
+			for(final String variant : trailingBitVariants(token, true)) {
+				assertNull(variant, signer.verifyCompact(variant));
+			}
+			assertNull(signer.verifyCompact(token + "="));
+			assertNull(signer.verifyCompact(" " + token));
+			assertNull(signer.verifyCompact(token.replace('-', '+')
+				.replace('_', '/') + "A"));
+		}
+	}
+	
+	@Test
+	public void compactRejectsWrongVersionAndLength() throws Exception {
+		final KolichStringSigner signer = new KolichStringSigner(SECRET);
+		final byte[] decoded = Base64.getUrlDecoder().decode(
+			signer.signCompact("user@example.com"));
+		final byte[] wrongVersion = decoded.clone();
+		wrongVersion[0] = 0x02;
+		assertNull(signer.verifyCompact(encodeCompact(wrongVersion)));
+		final byte[] wrongLength = decoded.clone();
+		wrongLength[1] += 1;
+		assertNull(signer.verifyCompact(encodeCompact(wrongLength)));
+		// A varint that never ends.
+		final byte[] endless = new byte[64];
+		endless[0] = 0x01;
+		for(int i = 1; i < endless.length; i++) {
+			endless[i] = (byte)0x80;
+		}
+		assertNull(signer.verifyCompact(encodeCompact(endless)));
+	}
+	
+	@Test
+	public void formatsAreNotInterchangeable() throws Exception {
+		final KolichStringSigner signer = new KolichStringSigner(SECRET);
+		assertNull(signer.verifyCompact(signer.sign("user@example.com")));
+		assertNull(signer.verify(signer.signCompact("user@example.com")));
+	}
+	
+	@Test
+	public void signAllMatchesSignInOrder() throws Exception {
+		for(final KolichStringSigner signer : signers()) {
+			// One batch small enough to stay on the calling thread, and
+			// one big enough to be split across every worker.
+			for(final int size : new int[]{0, 1, 100, 4 * 256 * 3 + 17}) {
+				final List<String> payloads = payloads(size);
+				final List<Either<StringSignerException,String>> signed =
+					signer.signAll(payloads, 4);
+				assertEquals(size, signed.size());
+				for(int i = 0; i < size; i++) {
+					assertTrue(signed.get(i).success());
+					assertEquals(signer.sign(payloads.get(i)),
+						signed.get(i).right());
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void verifyAllMatchesIsValidInOrder() throws Exception {
+		for(final KolichStringSigner signer : signers()) {
+			for(final int size : new int[]{0, 1, 100, 4 * 256 * 3 + 17}) {
+				final List<String> payloads = payloads(size);
+				final List<String> tokens = new ArrayList<String>(size);
+				for(final String payload : payloads) {
+					tokens.add(signer.sign(payload));
+				}
+				final List<Either<StringSignerException,String>> verified =
+					signer.verifyAll(tokens, 4);
+				assertEquals(size, verified.size());
+				for(int i = 0; i < size; i++) {
+					assertTrue(verified.get(i).success());
+					assertEquals(payloads.get(i), verified.get(i).right());
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void signAllReportsNullPayloadsInPlace() throws Exception {
+		final KolichStringSigner signer = new KolichStringSigner(SECRET);
+		final List<String> payloads = payloads(2000);
+		payloads.set(0, null);
+		payloads.set(1234, null);
+		final List<Either<StringSignerException,String>> signed =
+			signer.signAll(payloads, 4);
+		for(int i = 0; i < payloads.size(); i++) {
+			if(payloads.get(i) == null) {
+				assertFalse(signed.get(i).success());
+				assertNotNull(signed.get(i).left());
+			} else {
+				assertEquals(signer.sign(payloads.get(i)),
+					signed.get(i).right());
+			}
+		}
+	}
+	
+	@Test
+	public void verifyAllReportsInvalidSignaturesInPlace() throws Exception {
+		final KolichStringSigner signer = new KolichStringSigner(SECRET);
+		final String token = signer.sign("a");
+		final String flipped = trailingBitVariants(token, true)[0];
+		final List<String> tokens = Arrays.asList(token, null, "bogus",
+			new KolichStringSigner("other").sign("a"), flipped,
+			signer.signCompact("a"), token);
+		final List<Either<StringSignerException,String>> verified =
+			signer.verifyAll(tokens, 2);
+		assertEquals(tokens.size(), verified.size());
+		for(int i = 0; i < tokens.size(); i++) {
+			final boolean valid = (i == 0) || (i == tokens.size() - 1);
+			assertEquals(valid, verified.get(i).success());
+			if(valid) {
+				assertEquals("a", verified.get(i).right());
+			} else {
+				assertNotNull(verified.get(i).left());
+			}
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void batchRequiresAPositiveThreadCount() throws Exception {
+		new KolichStringSigner(SECRET).signAll(payloads(1), 0);
+	}
+	
+	static KolichStringSigner[] signers() throws Exception {
+		return new KolichStringSigner[]{
+			new KolichStringSigner(SECRET),
+			new KolichStringSigner(KolichStringSigner.ALGORITHM_HMAC_SHA_256,
+				SECRET)};
+	}
+	
+	/**
+	 * Returns every String that differs from the given base-64 one only
+	 * in the bits of its last data character that don't make it into
+	 * the decoded bytes.  A lenient decoder maps them all to the same
+	 * bytes as the original.
+	 */
+	static String[] trailingBitVariants(final String encoded,
+		final boolean urlSafe) {
+		final String data = encoded.replace("=", "");
+		final String padding = encoded.substring(data.length());
+		final int remainder = data.length() % 4;
+		if(remainder == 0) {
+			return new String[0];
+		}
+		final String alphabet = urlSafe ? URL_SAFE_ALPHABET :
+			URL_SAFE_ALPHABET.replace('-', '+').replace('_', '/');
+		final int last = alphabet.indexOf(data.charAt(data.length() - 1));
+		final int unused = (remainder == 2) ? 0x0F : 0x03;
+		final String[] variants = new String[unused];
+		for(int bits = 1; bits <= unused; bits++) {
+			variants[bits - 1] = data.substring(0, data.length() - 1) +
+				alphabet.charAt((last & ~unused) | bits) + padding;
+		}
+		return variants;
+	}
+	
+	private static List<String> payloads(final int size) {
+		final List<String> payloads = new ArrayList<String>(size);
+		for(int i = 0; i < size; i++) {
+			payloads.add("user" + i + "@example.com");
+		}
+		return payloads;
+	}
+	
+	private static String encodeCompact(final byte[] token) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+	}
+	
+	private static String wrap(final String encodedPayload,
+		final String encodedSignature) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(
+			(encodedPayload + "|" + encodedSignature).getBytes(UTF_8));
+	}
+	
+}